@@ -0,0 +1,154 @@
+package org.tastefuljava.simuli;
+
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.imageio.ImageIO;
+import org.tastefuljava.simuli.document.DocumentIO;
+import org.tastefuljava.simuli.model.Schema;
+import org.tastefuljava.simuli.render.LayoutCache;
+import org.tastefuljava.simuli.render.SvgRenderer;
+import org.tastefuljava.simuli.render.TileRenderer;
+
+// renders schema documents to images without a display:
+// BatchRender [-format png|svg] [-out dir] [-threads n] file...
+public class BatchRender {
+    private static final Logger LOG
+            = Logger.getLogger(BatchRender.class.getName());
+
+    private final Properties props;
+    private final Object aaHint;
+    private final Object fmHint;
+    private String format = "png";
+    private File outputDir;
+
+    public BatchRender(Properties props, Object aaHint, Object fmHint) {
+        this.props = props;
+        this.aaHint = aaHint;
+        this.fmHint = fmHint;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public void setFormat(String format) {
+        if (!"png".equals(format) && !"svg".equals(format)) {
+            throw new IllegalArgumentException("Unknown format: " + format);
+        }
+        this.format = format;
+    }
+
+    public File getOutputDir() {
+        return outputDir;
+    }
+
+    // null to write the images next to the documents
+    public void setOutputDir(File outputDir) {
+        this.outputDir = outputDir;
+    }
+
+    public File outputFile(File file) {
+        String name = file.getName();
+        int pos = name.lastIndexOf('.');
+        if (pos > 0) {
+            name = name.substring(0, pos);
+        }
+        File dir = outputDir != null ? outputDir : file.getAbsoluteFile()
+                .getParentFile();
+        return new File(dir, name + "." + format);
+    }
+
+    public File render(File file) throws IOException {
+        Schema schema = DocumentIO.load(file);
+        File output = outputFile(file);
+        // the layouts of a file are of no use to the next one
+        LayoutCache layouts = new LayoutCache(props, aaHint, fmHint);
+        if ("svg".equals(format)) {
+            new SvgRenderer(layouts).render(schema, output);
+        } else {
+            // each file is rendered on a single thread: the pool is busy
+            // with the other files
+            TileRenderer renderer = new TileRenderer(layouts);
+            BufferedImage image = renderer.renderTile(schema,
+                    renderer.getArea(schema));
+            if (!ImageIO.write(image, format, output)) {
+                throw new IOException("No writer for format " + format);
+            }
+        }
+        return output;
+    }
+
+    // returns the number of files that could not be rendered
+    public int render(List<File> files, ExecutorService executor)
+            throws InterruptedException {
+        List<Callable<File>> tasks = new ArrayList<>();
+        for (File file: files) {
+            tasks.add(() -> render(file));
+        }
+        int failures = 0;
+        int i = 0;
+        for (Future<File> future: executor.invokeAll(tasks)) {
+            File file = files.get(i++);
+            try {
+                LOG.log(Level.INFO, "{0} -> {1}",
+                        new Object[] {file, future.get()});
+            } catch (ExecutionException e) {
+                LOG.log(Level.SEVERE, "Could not render " + file,
+                        e.getCause());
+                ++failures;
+            }
+        }
+        return failures;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        System.setProperty("java.awt.headless", "true");
+        BatchRender batch = new BatchRender(new Properties(),
+                RenderingHints.VALUE_TEXT_ANTIALIAS_ON,
+                RenderingHints.VALUE_FRACTIONALMETRICS_DEFAULT);
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<File> files = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; ++i) {
+                switch (args[i]) {
+                    case "-format":
+                        batch.setFormat(args[++i]);
+                        break;
+                    case "-out":
+                        batch.setOutputDir(new File(args[++i]));
+                        break;
+                    case "-threads":
+                        threads = Integer.parseInt(args[++i]);
+                        break;
+                    default:
+                        files.add(new File(args[i]));
+                        break;
+                }
+            }
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            System.err.println("Usage: BatchRender [-format png|svg]"
+                    + " [-out dir] [-threads n] file...");
+            System.exit(2);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        int failures;
+        try {
+            failures = batch.render(files, executor);
+        } finally {
+            executor.shutdownNow();
+        }
+        System.exit(failures == 0 ? 0 : 1);
+    }
+}
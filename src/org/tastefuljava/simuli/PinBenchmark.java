@@ -0,0 +1,97 @@
+package org.tastefuljava.simuli;
+
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Properties;
+import org.tastefuljava.simuli.model.Input;
+import org.tastefuljava.simuli.model.Output;
+import org.tastefuljava.simuli.model.Patch;
+import org.tastefuljava.simuli.model.Schema;
+import org.tastefuljava.simuli.render.HitTester;
+import org.tastefuljava.simuli.render.LayoutCache;
+import org.tastefuljava.simuli.render.RenderContext;
+
+// measures pin lookups, painting and hit tests for growing pin counts; the
+// cost per pin should stay flat:
+// PinBenchmark [pin count...]
+public class PinBenchmark {
+    private static final int ROUNDS = 20;
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        int[] counts = {10, 50, 200, 400};
+        if (args.length > 0) {
+            counts = new int[args.length];
+            for (int i = 0; i < args.length; ++i) {
+                counts[i] = Integer.parseInt(args[i]);
+            }
+        }
+        // the first run only warms up the JIT
+        run(counts[counts.length-1], false);
+        for (int count: counts) {
+            run(count, true);
+        }
+    }
+
+    private static void run(int pinCount, boolean print) {
+        Schema schema = new Schema();
+        Patch source = new Patch();
+        source.setTitle("source");
+        Patch sink = new Patch();
+        sink.setTitle("sink");
+        sink.setPosition(400, 0);
+        for (int i = 0; i < pinCount; ++i) {
+            Output out = source.newOutput("out" + i);
+            sink.newInput("in" + i).setSource(out);
+        }
+        schema.addPatch(source);
+        schema.addPatch(sink);
+        LayoutCache layouts = new LayoutCache(new Properties(),
+                RenderingHints.VALUE_TEXT_ANTIALIAS_ON,
+                RenderingHints.VALUE_FRACTIONALMETRICS_DEFAULT);
+        BufferedImage image = new BufferedImage(800, 600,
+                BufferedImage.TYPE_INT_ARGB);
+        try (RenderContext pc = RenderContext.open(layouts)) {
+            pc.getBounds(schema);
+            long sum = 0;
+            long t0 = System.nanoTime();
+            for (int r = 0; r < ROUNDS; ++r) {
+                for (Input in: sink.getInputs()) {
+                    sum += in.getIndex() + in.getSource().getIndex();
+                }
+            }
+            long t1 = System.nanoTime();
+            for (int r = 0; r < ROUNDS; ++r) {
+                Graphics2D g = image.createGraphics();
+                pc.paint(g, schema, 0, 0, Integer.MAX_VALUE/2,
+                        Integer.MAX_VALUE/2, 0, 0);
+                g.dispose();
+            }
+            long t2 = System.nanoTime();
+            HitTester<Input> tester = new HitTester<Input>() {
+                @Override
+                public Input inputPin(Patch patch, Input in) {
+                    return in;
+                }
+            };
+            for (int r = 0; r < ROUNDS; ++r) {
+                for (Input in: sink.getInputs()) {
+                    Point pt = pc.inputPosition(in);
+                    if (pc.hitTest(schema, pt.x, pt.y, tester) == in) {
+                        ++sum;
+                    }
+                }
+            }
+            long t3 = System.nanoTime();
+            if (print) {
+                double n = (double)ROUNDS*pinCount;
+                System.out.printf("%5d pins: lookup %8.1f ns/pin,"
+                        + " paint %8.1f ns/pin, hit test %8.1f ns/pin"
+                        + " (checksum %d)%n", pinCount, (t1 - t0)/n,
+                        (t2 - t1)/n, (t3 - t2)/n, sum);
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package org.tastefuljava.simuli.document;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.tastefuljava.simuli.model.CompactSchema;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+
+// reads a flat document straight into a compact schema, without building the
+// object model; the pins are mapped to their global indices
+class CompactReader extends DocumentHandler {
+    private CompactSchema.Builder builder;
+    private CompactSchema schema;
+    private final Map<String,Integer> inputs = new HashMap<>();
+    private final Map<String,Integer> outputs = new HashMap<>();
+
+    CompactSchema getSchema() {
+        return schema;
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName,
+            Attributes attrs) throws SAXException {
+        switch (qName) {
+            case "schema":
+                builder = new CompactSchema.Builder();
+                break;
+            case "definition":
+                throw new SAXException(
+                        "Composite patches must be expanded first");
+            case "patch":
+                startPatch(attrs);
+                break;
+            case "input":
+                startPin(attrs, inputs, builder.addInput(
+                        attrs.getValue("name")));
+                break;
+            case "output":
+                startPin(attrs, outputs, builder.addOutput(
+                        attrs.getValue("name")));
+                break;
+            case "link":
+                startLink(attrs);
+                break;
+        }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName)
+            throws SAXException {
+        if (qName.equals("schema")) {
+            schema = builder.build();
+            builder = null;
+        }
+    }
+
+    private void startPatch(Attributes attrs) throws SAXException {
+        String ref = attrs.getValue("definition");
+        if (ref != null) {
+            throw new SAXException(
+                    "Composite patches must be expanded first");
+        }
+        builder.addPatch(attrs.getValue("title"),
+                Integer.parseInt(attrs.getValue("x")),
+                Integer.parseInt(attrs.getValue("y")));
+    }
+
+    private static void startPin(Attributes attrs, Map<String,Integer> ids,
+            int index) {
+        String id = attrs.getValue("id");
+        if (id != null) {
+            ids.put(id, index);
+        }
+    }
+
+    private void startLink(Attributes attrs) throws SAXException {
+        String from = attrs.getValue("from");
+        Integer out = outputs.get(from);
+        if (out == null) {
+            throw new SAXException("Output ID not found: [" + from + "]");
+        }
+        String to = attrs.getValue("to");
+        for (String id: to.split("\\s")) {
+            Integer in = inputs.get(id);
+            if (in == null) {
+                throw new SAXException("Input ID not found: [" + id + "]");
+            }
+            builder.connect(out, in);
+        }
+    }
+}
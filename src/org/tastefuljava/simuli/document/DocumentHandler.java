@@ -0,0 +1,50 @@
+package org.tastefuljava.simuli.document;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+import org.xml.sax.helpers.DefaultHandler;
+
+// resolves the DTD and reports the errors of the documents being read
+abstract class DocumentHandler extends DefaultHandler {
+    private static final Logger LOG
+            = Logger.getLogger(DocumentHandler.class.getName());
+
+    private static final String DTD_SYSTEM_ID = "simuli.dtd";
+    private static final String DTD_PUBLIC_ID
+            = "-//tastefuljava.org//Simuli Document 1.0//EN";
+
+    @Override
+    public InputSource resolveEntity(String publicId, String systemId)
+            throws IOException, SAXException {
+        if (DTD_PUBLIC_ID.equals(publicId)
+                || DTD_SYSTEM_ID.equals(systemId)) {
+            InputSource source = new InputSource(
+                    DocumentHandler.class.getResourceAsStream(DTD_SYSTEM_ID));
+            source.setPublicId(publicId);
+            source.setSystemId(systemId);
+            return source;
+        }
+        return super.resolveEntity(publicId, systemId);
+    }
+
+    @Override
+    public void fatalError(SAXParseException e) throws SAXException {
+        LOG.log(Level.SEVERE, e.getMessage(), e);
+        throw new SAXException(e.getMessage());
+    }
+
+    @Override
+    public void error(SAXParseException e) throws SAXException {
+        LOG.log(Level.SEVERE, e.getMessage(), e);
+        throw new SAXException(e.getMessage());
+    }
+
+    @Override
+    public void warning(SAXParseException e) throws SAXException {
+        LOG.log(Level.WARNING, e.getMessage(), e);
+    }
+}
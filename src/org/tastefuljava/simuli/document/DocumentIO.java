@@ -12,6 +12,7 @@ import java.util.logging.Logger;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
+import org.tastefuljava.simuli.model.CompactSchema;
 import org.tastefuljava.simuli.model.Schema;
 import org.xml.sax.SAXException;
 
@@ -20,14 +21,26 @@ public class DocumentIO {
             = Logger.getLogger(DocumentIO.class.getName());
 
     public static Schema load(File file) throws IOException {
+        DocumentReader reader = new DocumentReader();
+        parse(file, reader);
+        return reader.getSchema();
+    }
+
+    // reads a document without composite patches into a compact schema
+    public static CompactSchema loadCompact(File file) throws IOException {
+        CompactReader reader = new CompactReader();
+        parse(file, reader);
+        return reader.getSchema();
+    }
+
+    private static void parse(File file, DocumentHandler handler)
+            throws IOException {
         try {
             SAXParserFactory factory = SAXParserFactory.newInstance();
             factory.setValidating(true);
             factory.setNamespaceAware(true);
             SAXParser parser = factory.newSAXParser();
-            DocumentReader reader = new DocumentReader();
-            parser.parse(file, reader);
-            return reader.getSchema();
+            parser.parse(file, handler);
         } catch (SAXException | ParserConfigurationException e) {
             LOG.log(Level.SEVERE, "Error reading project", e);
             throw new IOException(e.getMessage());
@@ -42,4 +55,14 @@ public class DocumentIO {
             out.writeSchema(schema);
         }
     }
+
+    public static void store(CompactSchema schema, File file)
+            throws IOException {
+        try (OutputStream stream = new FileOutputStream(file);
+                Writer writer = new OutputStreamWriter(stream, "UTF-8");
+                PrintWriter pwriter = new PrintWriter(writer);
+                DocumentWriter out = new DocumentWriter(pwriter)) {
+            out.writeSchema(schema);
+        }
+    }
 }
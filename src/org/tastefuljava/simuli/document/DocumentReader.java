@@ -1,75 +1,45 @@
 package org.tastefuljava.simuli.document;
 
-import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import org.tastefuljava.simuli.model.CompositePatch;
 import org.tastefuljava.simuli.model.Input;
 import org.tastefuljava.simuli.model.Output;
 import org.tastefuljava.simuli.model.Patch;
 import org.tastefuljava.simuli.model.Schema;
+import org.tastefuljava.simuli.model.SubSchema;
 import org.xml.sax.Attributes;
-import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
-import org.xml.sax.SAXParseException;
-import org.xml.sax.helpers.DefaultHandler;
-
-class DocumentReader extends DefaultHandler {
-    private static final Logger LOG
-            = Logger.getLogger(DocumentReader.class.getName());
-
-    private static final String DTD_SYSTEM_ID = "simuli.dtd";
-    private static final String DTD_PUBLIC_ID
-            = "-//tastefuljava.org//Simuli Document 1.0//EN";
 
+class DocumentReader extends DocumentHandler {
     private Schema schema;
+    private Schema body;
+    private SubSchema definition;
     private Patch patch;
+    private int inputCount;
+    private int outputCount;
     private StringBuilder buf;
     private final Map<String,Input> inputs = new HashMap<>();
     private final Map<String,Output> outputs = new HashMap<>();
+    private final Map<String,SubSchema> definitions = new HashMap<>();
 
     Schema getSchema() {
         return schema;
     }
 
-    @Override
-    public InputSource resolveEntity(String publicId, String systemId)
-            throws IOException, SAXException {
-        if (DTD_PUBLIC_ID.equals(publicId)
-                || DTD_SYSTEM_ID.equals(systemId)) {
-            InputSource source = new InputSource(
-                    getClass().getResourceAsStream(DTD_SYSTEM_ID));
-            source.setPublicId(publicId);
-            source.setSystemId(systemId);
-            return source;
-        }
-        return super.resolveEntity(publicId, systemId);
-    }
-
-    @Override
-    public void fatalError(SAXParseException e) throws SAXException {
-        LOG.log(Level.SEVERE, e.getMessage(), e);
-        throw new SAXException(e.getMessage());
-    }
-
-    @Override
-    public void error(SAXParseException e) throws SAXException {
-        LOG.log(Level.SEVERE, e.getMessage(), e);
-        throw new SAXException(e.getMessage());
-    }
-
-    @Override
-    public void warning(SAXParseException e) throws SAXException {
-        LOG.log(Level.WARNING, e.getMessage(), e);
-    }
-
     @Override
     public void startElement(String uri, String localName, String qName,
             Attributes attrs) throws SAXException {
         switch (qName) {
             case "schema":
                 schema = new Schema();
+                body = schema;
+                break;
+            case "definition":
+                startDefinition(attrs);
+                break;
+            case "export":
+                startExport(attrs);
                 break;
             case "patch":
                 startPatch(attrs);
@@ -91,9 +61,13 @@ class DocumentReader extends DefaultHandler {
             throws SAXException {
         switch (qName) {
             case "patch":
-                schema.addPatch(patch);
+                body.addPatch(patch);
                 patch = null;
                 break;
+            case "definition":
+                definition = null;
+                body = schema;
+                break;
         }
     }
 
@@ -105,15 +79,48 @@ class DocumentReader extends DefaultHandler {
         }
     }
 
-    private void startPatch(Attributes attrs) throws NumberFormatException {
-        patch = new Patch();
+    private void startDefinition(Attributes attrs) {
+        body = new Schema();
+        definition = new SubSchema(attrs.getValue("name"), body);
+        definitions.put(attrs.getValue("id"), definition);
+    }
+
+    private void startExport(Attributes attrs) throws SAXException {
+        String id = attrs.getValue("pin");
+        if (inputs.containsKey(id)) {
+            definition.exportInput(inputs.get(id));
+        } else if (outputs.containsKey(id)) {
+            definition.exportOutput(outputs.get(id));
+        } else {
+            throw new SAXException("Pin ID not found: [" + id + "]");
+        }
+    }
+
+    private void startPatch(Attributes attrs) throws SAXException {
+        String ref = attrs.getValue("definition");
+        if (ref == null) {
+            patch = new Patch();
+        } else {
+            SubSchema def = definitions.get(ref);
+            if (def == null) {
+                throw new SAXException(
+                        "Definition ID not found: [" + ref + "]");
+            }
+            patch = new CompositePatch(def);
+        }
+        inputCount = 0;
+        outputCount = 0;
         patch.setTitle(attrs.getValue("title"));
         patch.setPosition(Integer.parseInt(attrs.getValue("x")),
                 Integer.parseInt(attrs.getValue("y")));
     }
 
     private void startInput(Attributes attrs) {
-        Input in = patch.newInput(attrs.getValue("name"));
+        // the pins of a composite patch come from its definition
+        Input in = inputCount < patch.getInputCount()
+                ? patch.getInput(inputCount)
+                : patch.newInput(attrs.getValue("name"));
+        ++inputCount;
         String id = attrs.getValue("id");
         if (id != null) {
             inputs.put(id, in);
@@ -121,7 +128,10 @@ class DocumentReader extends DefaultHandler {
     }
 
     private void startOutput(Attributes attrs) {
-        Output out = patch.newOutput(attrs.getValue("name"));
+        Output out = outputCount < patch.getOutputCount()
+                ? patch.getOutput(outputCount)
+                : patch.newOutput(attrs.getValue("name"));
+        ++outputCount;
         String id = attrs.getValue("id");
         if (id != null) {
             outputs.put(id, out);
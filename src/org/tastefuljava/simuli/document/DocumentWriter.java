@@ -3,13 +3,20 @@ package org.tastefuljava.simuli.document;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import org.tastefuljava.simuli.model.CompactSchema;
+import org.tastefuljava.simuli.model.CompositePatch;
 import org.tastefuljava.simuli.model.Input;
 import org.tastefuljava.simuli.model.Output;
 import org.tastefuljava.simuli.model.Patch;
 import org.tastefuljava.simuli.model.Pin;
 import org.tastefuljava.simuli.model.Schema;
+import org.tastefuljava.simuli.model.SubSchema;
 import org.tastefuljava.simuli.util.XMLWriter;
 
 class DocumentWriter implements Closeable {
@@ -18,6 +25,10 @@ class DocumentWriter implements Closeable {
 
     private final Map<Input,String> inputIds = new IdentityHashMap<>();
     private final Map<Output,String> outputIds = new IdentityHashMap<>();
+    private final Map<SubSchema,String> definitionIds
+            = new IdentityHashMap<>();
+    private final Set<Pin> exported
+            = Collections.newSetFromMap(new IdentityHashMap<>());
     private int lastId = 0;
 
     DocumentWriter(PrintWriter out) {
@@ -40,6 +51,60 @@ class DocumentWriter implements Closeable {
 
     void writeSchema(Schema schema) {
         xml.start("schema");
+        List<SubSchema> definitions = new ArrayList<>();
+        collectDefinitions(schema, definitions);
+        for (SubSchema def: definitions) {
+            writeDefinition(def);
+        }
+        writeBody(schema);
+        xml.end("schema");
+    }
+
+    // definitions are written once, after the ones they use
+    private void collectDefinitions(Schema schema, List<SubSchema> result) {
+        for (Patch patch: schema.patches()) {
+            if (patch instanceof CompositePatch) {
+                SubSchema def = ((CompositePatch)patch).getDefinition();
+                if (!definitionIds.containsKey(def)) {
+                    definitionIds.put(def, null);
+                    collectDefinitions(def.getBody(), result);
+                    definitionIds.put(def, "d" + (result.size() + 1));
+                    result.add(def);
+                }
+            }
+        }
+    }
+
+    private void writeDefinition(SubSchema def) {
+        xml.start("definition");
+        xml.attribute("id", definitionIds.get(def));
+        if (def.getName() != null) {
+            xml.attribute("name", def.getName());
+        }
+        for (Input in: def.getInputs()) {
+            exported.add(in);
+        }
+        for (Output out: def.getOutputs()) {
+            exported.add(out);
+        }
+        writeBody(def.getBody());
+        for (Input in: def.getInputs()) {
+            writeExport(inputIds.get(in));
+        }
+        for (Output out: def.getOutputs()) {
+            writeExport(outputIds.get(out));
+        }
+        exported.clear();
+        xml.end("definition");
+    }
+
+    private void writeExport(String pinId) {
+        xml.start("export");
+        xml.attribute("pin", pinId);
+        xml.end("export");
+    }
+
+    private void writeBody(Schema schema) {
         for (Patch patch: schema.patches()) {
             writePatch(patch);
         }
@@ -50,13 +115,79 @@ class DocumentWriter implements Closeable {
                 }
             }
         }
+    }
+
+    void writeSchema(CompactSchema schema) {
+        xml.start("schema");
+        for (int p = 0; p < schema.getPatchCount(); ++p) {
+            writePatch(schema, p);
+        }
+        for (int out = 0; out < schema.getTotalOutputCount(); ++out) {
+            if (schema.isOutputConnected(out)) {
+                writeLinks(schema, out);
+            }
+        }
         xml.end("schema");
     }
 
+    private void writePatch(CompactSchema schema, int p) {
+        xml.start("patch");
+        xml.attribute("type", Patch.class.getName());
+        xml.attribute("title", schema.getTitle(p));
+        xml.attribute("x", Integer.toString(schema.getX(p)));
+        xml.attribute("y", Integer.toString(schema.getY(p)));
+        for (int i = 0; i < schema.getInputCount(p); ++i) {
+            int in = schema.inputIndex(p, i);
+            writePin("input", schema.isInputConnected(in) ? pinId(p, 'i', i)
+                    : null, schema.getInputName(in));
+        }
+        for (int i = 0; i < schema.getOutputCount(p); ++i) {
+            int out = schema.outputIndex(p, i);
+            writePin("output", schema.isOutputConnected(out)
+                    ? pinId(p, 'o', i) : null, schema.getOutputName(out));
+        }
+        xml.end("patch");
+    }
+
+    private void writePin(String tag, String id, String name) {
+        xml.start(tag);
+        if (id != null) {
+            xml.attribute("id", id);
+        }
+        xml.attribute("name", name);
+        xml.end(tag);
+    }
+
+    private void writeLinks(CompactSchema schema, int out) {
+        StringBuilder buf = new StringBuilder();
+        for (int k = 0; k < schema.getSinkCount(out); ++k) {
+            int in = schema.getSink(out, k);
+            if (buf.length() > 0) {
+                buf.append(' ');
+            }
+            buf.append(pinId(schema.getInputPatch(in), 'i',
+                    schema.getInputPosition(in)));
+        }
+        xml.start("link");
+        xml.attribute("from", pinId(schema.getOutputPatch(out), 'o',
+                schema.getOutputPosition(out)));
+        xml.attribute("to", buf.toString());
+        xml.end("link");
+    }
+
+    // same ids as the object model, where patch ids start at 1
+    private static String pinId(int patch, char kind, int index) {
+        return "p" + (patch + 1) + kind + (index + 1);
+    }
+
     private void writePatch(Patch patch) {
         int id = ++lastId;
         xml.start("patch");
         xml.attribute("type", patch.getClass().getName());
+        if (patch instanceof CompositePatch) {
+            xml.attribute("definition", definitionIds.get(
+                    ((CompositePatch)patch).getDefinition()));
+        }
         xml.attribute("title", patch.getTitle());
         xml.attribute("x", Integer.toString(patch.getX()));
         xml.attribute("y", Integer.toString(patch.getY()));
@@ -72,7 +203,7 @@ class DocumentWriter implements Closeable {
     private <T extends Pin> void writePin(int patchId, String tag, T pin,
             Map<T,String> ids) {
         xml.start(tag);
-        if (pin.isConnected()) {
+        if (pin.isConnected() || exported.contains(pin)) {
             String id = "p" + patchId + tag.charAt(0) +(pin.getIndex()+1);
             xml.attribute("id", id);
             ids.put(pin, id);
@@ -0,0 +1,57 @@
+package org.tastefuljava.simuli.engine;
+
+public class BatchFrame extends Frame {
+    private final int lanes;
+    private final double[] scratch;
+
+    BatchFrame(CompiledSchema plan, SignalBuffer signals, double[] params,
+            double[] state) {
+        super(plan, signals, params, state);
+        this.lanes = signals.getLaneCount();
+        this.scratch = new double[lanes];
+    }
+
+    @Override
+    public int getLaneCount() {
+        return lanes;
+    }
+
+    public double[] getSignals() {
+        return values();
+    }
+
+    public int inputOffset(int i) {
+        return inputSlot(i)*lanes;
+    }
+
+    public int outputOffset(int i) {
+        return outputSlot(i)*lanes;
+    }
+
+    public double[] getParameters() {
+        return params();
+    }
+
+    public int parameterOffset(int i) {
+        return parameterIndex(i)*lanes;
+    }
+
+    public double[] getState() {
+        return state();
+    }
+
+    public int stateOffset(int i) {
+        return stateIndex(i)*lanes;
+    }
+
+    public double[] getScratch() {
+        return scratch;
+    }
+
+    public void outputAll(double[] src, int offset) {
+        double[] values = values();
+        for (int i = 0; i < getOutputCount(); ++i) {
+            System.arraycopy(src, offset, values, outputOffset(i), lanes);
+        }
+    }
+}
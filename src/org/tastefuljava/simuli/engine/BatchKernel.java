@@ -0,0 +1,5 @@
+package org.tastefuljava.simuli.engine;
+
+public interface BatchKernel extends Kernel {
+    public void evaluate(BatchFrame frame);
+}
@@ -0,0 +1,53 @@
+package org.tastefuljava.simuli.engine;
+
+import org.tastefuljava.simuli.model.Input;
+import org.tastefuljava.simuli.model.Output;
+import org.tastefuljava.simuli.model.Patch;
+
+public class BatchSimulation extends Simulation {
+    public BatchSimulation(CompiledSchema plan, int lanes) {
+        super(plan, lanes);
+    }
+
+    public double getValue(Output out, int lane) {
+        checkLane(lane);
+        return getSignals().get(getPlan().outputSlot(out), lane);
+    }
+
+    public double getValue(Input in, int lane) {
+        checkLane(lane);
+        CompiledSchema plan = getPlan();
+        int slot = plan.inputSlot(in);
+        return plan.isDelayed(in)
+                ? getSignals().getPrevious(slot, lane)
+                : getSignals().get(slot, lane);
+    }
+
+    public void setInput(Input in, int lane, double value) {
+        checkLane(lane);
+        int slot = getPlan().inputSlot(in);
+        if (!getPlan().isExternalSlot(slot)) {
+            throw new IllegalArgumentException(
+                    "Input is connected: [" + in.getName() + "]");
+        }
+        getSignals().set(slot, lane, value);
+    }
+
+    public double getParameter(Patch patch, int i, int lane) {
+        checkLane(lane);
+        return getParameters()[getPlan().parameterIndex(patch, i)
+                *getLaneCount() + lane];
+    }
+
+    public void setParameter(Patch patch, int i, int lane, double value) {
+        checkLane(lane);
+        getParameters()[getPlan().parameterIndex(patch, i)
+                *getLaneCount() + lane] = value;
+    }
+
+    private void checkLane(int lane) {
+        if (lane < 0 || lane >= getLaneCount()) {
+            throw new IndexOutOfBoundsException("Invalid lane: " + lane);
+        }
+    }
+}
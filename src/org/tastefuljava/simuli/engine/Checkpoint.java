@@ -0,0 +1,328 @@
+package org.tastefuljava.simuli.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+public class Checkpoint {
+    private static final int MAGIC = 0x534D434B;
+    private static final int VERSION = 3;
+    private static final int BUFFER_SIZE = 64*1024;
+
+    private final int lanes;
+    private final int slotCount;
+    private final int parameterCount;
+    private final int stateSize;
+    private final int unitCount;
+    private final long fingerprint;
+    private final long time;
+    private final int currentHalf;
+    private final double[] signals;
+    private final double[] params;
+    private final double[] state;
+    private long[] eventTimes;
+    private int[] eventUnits;
+    private double[] stepState;
+
+    Checkpoint(CompiledSchema plan, int lanes, long time, SignalBuffer signals,
+            double[] params, double[] state) {
+        this(lanes, plan.getSlotCount(), plan.getParameterCount(),
+                plan.getStateSize(), plan.getUnitCount(),
+                plan.getFingerprint(), time,
+                signals.getCurrentHalf(), signals.data().clone(),
+                params.clone(), state.clone());
+    }
+
+    private Checkpoint(int lanes, int slotCount, int parameterCount,
+            int stateSize, int unitCount, long fingerprint, long time,
+            int currentHalf, double[] signals, double[] params,
+            double[] state) {
+        this.lanes = lanes;
+        this.slotCount = slotCount;
+        this.parameterCount = parameterCount;
+        this.stateSize = stateSize;
+        this.unitCount = unitCount;
+        this.fingerprint = fingerprint;
+        this.time = time;
+        this.currentHalf = currentHalf;
+        this.signals = signals;
+        this.params = params;
+        this.state = state;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public int getLaneCount() {
+        return lanes;
+    }
+
+    public boolean hasEvents() {
+        return eventTimes != null;
+    }
+
+    public int getEventCount() {
+        return eventTimes == null ? 0 : eventTimes.length;
+    }
+
+    public boolean isCompatible(Simulation sim) {
+        CompiledSchema plan = sim.getPlan();
+        return lanes == sim.getLaneCount()
+                && slotCount == plan.getSlotCount()
+                && parameterCount == plan.getParameterCount()
+                && stateSize == plan.getStateSize()
+                && unitCount == plan.getUnitCount()
+                && fingerprint == plan.getFingerprint();
+    }
+
+    void setEvents(long[] times, int[] units) {
+        this.eventTimes = times;
+        this.eventUnits = units;
+    }
+
+    long[] eventTimes() {
+        return eventTimes;
+    }
+
+    int[] eventUnits() {
+        return eventUnits;
+    }
+
+    boolean hasStepState() {
+        return stepState != null;
+    }
+
+    // the state at the beginning of the current step
+    void setStepState(double[] stepState) {
+        this.stepState = stepState;
+    }
+
+    double[] stepState() {
+        return stepState;
+    }
+
+    int getCurrentHalf() {
+        return currentHalf;
+    }
+
+    void copyTo(double[] signals, double[] params, double[] state) {
+        System.arraycopy(this.signals, 0, signals, 0, signals.length);
+        System.arraycopy(this.params, 0, params, 0, params.length);
+        System.arraycopy(this.state, 0, state, 0, state.length);
+    }
+
+    public Future<?> write(final File file, ExecutorService executor) {
+        return executor.submit(() -> {
+            write(file);
+            return null;
+        });
+    }
+
+    public void write(File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ChannelWriter out = new ChannelWriter(channel);
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.putInt(lanes);
+            out.putInt(slotCount);
+            out.putInt(parameterCount);
+            out.putInt(stateSize);
+            out.putInt(unitCount);
+            out.putLong(fingerprint);
+            out.putLong(time);
+            out.putInt(currentHalf);
+            out.putDoubles(signals);
+            out.putDoubles(params);
+            out.putDoubles(state);
+            if (eventTimes == null) {
+                out.putInt(-1);
+            } else {
+                out.putInt(eventTimes.length);
+                for (int i = 0; i < eventTimes.length; ++i) {
+                    out.putLong(eventTimes[i]);
+                    out.putInt(eventUnits[i]);
+                }
+            }
+            if (stepState == null) {
+                out.putInt(-1);
+            } else {
+                out.putInt(stepState.length);
+                out.putDoubles(stepState);
+            }
+            out.flush();
+            channel.force(true);
+        }
+        // a crash during the write must not destroy the previous checkpoint
+        try {
+            Files.move(temp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    public static Checkpoint read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            ChannelReader in = new ChannelReader(channel);
+            if (in.getInt() != MAGIC) {
+                throw new IOException("Not a checkpoint file: " + file);
+            }
+            int version = in.getInt();
+            if (version != VERSION) {
+                throw new IOException(
+                        "Unsupported checkpoint version: " + version);
+            }
+            int lanes = in.getInt();
+            int slotCount = in.getInt();
+            int parameterCount = in.getInt();
+            int stateSize = in.getInt();
+            int unitCount = in.getInt();
+            long fingerprint = in.getLong();
+            long time = in.getLong();
+            int currentHalf = in.getInt();
+            if (lanes < 1 || slotCount < 0 || parameterCount < 0
+                    || stateSize < 0 || unitCount < 0
+                    || (currentHalf & ~1) != 0) {
+                throw new IOException("Corrupted checkpoint file: " + file);
+            }
+            Checkpoint result = new Checkpoint(lanes, slotCount,
+                    parameterCount, stateSize, unitCount, fingerprint, time,
+                    currentHalf,
+                    in.getDoubles(Math.multiplyExact(2*slotCount, lanes)),
+                    in.getDoubles(Math.multiplyExact(parameterCount, lanes)),
+                    in.getDoubles(Math.multiplyExact(stateSize, lanes)));
+            int eventCount = in.getInt();
+            if (12L*eventCount > channel.size()) {
+                throw new IOException("Truncated checkpoint file");
+            }
+            if (eventCount >= 0) {
+                long[] times = new long[eventCount];
+                int[] units = new int[eventCount];
+                for (int i = 0; i < eventCount; ++i) {
+                    times[i] = in.getLong();
+                    units[i] = in.getInt();
+                    if (units[i] < 0 || units[i] >= unitCount) {
+                        throw new IOException(
+                                "Corrupted checkpoint file: " + file);
+                    }
+                }
+                result.setEvents(times, units);
+            }
+            int stepStateSize = in.getInt();
+            if (stepStateSize >= 0) {
+                if (stepStateSize != stateSize*lanes) {
+                    throw new IOException(
+                            "Corrupted checkpoint file: " + file);
+                }
+                result.setStepState(in.getDoubles(stepStateSize));
+            }
+            return result;
+        }
+    }
+
+    private static class ChannelWriter {
+        private final FileChannel channel;
+        private final ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+
+        ChannelWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(4);
+            buf.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(8);
+            buf.putLong(value);
+        }
+
+        void putDoubles(double[] values) throws IOException {
+            int i = 0;
+            while (i < values.length) {
+                ensure(8);
+                int n = Math.min(values.length - i, buf.remaining()/8);
+                buf.asDoubleBuffer().put(values, i, n);
+                buf.position(buf.position() + 8*n);
+                i += n;
+            }
+        }
+
+        void flush() throws IOException {
+            buf.flip();
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            buf.clear();
+        }
+
+        private void ensure(int size) throws IOException {
+            if (buf.remaining() < size) {
+                flush();
+            }
+        }
+    }
+
+    private static class ChannelReader {
+        private final FileChannel channel;
+        private final ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+
+        ChannelReader(FileChannel channel) {
+            this.channel = channel;
+            buf.flip();
+        }
+
+        int getInt() throws IOException {
+            ensure(4);
+            return buf.getInt();
+        }
+
+        long getLong() throws IOException {
+            ensure(8);
+            return buf.getLong();
+        }
+
+        double[] getDoubles(int count) throws IOException {
+            if (8L*count > channel.size()) {
+                throw new IOException("Truncated checkpoint file");
+            }
+            double[] result = new double[count];
+            int i = 0;
+            while (i < count) {
+                ensure(8);
+                int n = Math.min(count - i, buf.remaining()/8);
+                buf.asDoubleBuffer().get(result, i, n);
+                buf.position(buf.position() + 8*n);
+                i += n;
+            }
+            return result;
+        }
+
+        private void ensure(int size) throws IOException {
+            if (buf.remaining() < size) {
+                buf.compact();
+                while (buf.position() < size) {
+                    if (channel.read(buf) < 0) {
+                        throw new IOException("Truncated checkpoint file");
+                    }
+                }
+                buf.flip();
+            }
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package org.tastefuljava.simuli.engine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.security.CodeSource;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+public class CodeGenerator {
+    private static final Logger LOG
+            = Logger.getLogger(CodeGenerator.class.getName());
+
+    private static final String PACKAGE
+            = "org.tastefuljava.simuli.engine.generated";
+    private static final int MAX_STATEMENTS = 200;
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    public static boolean isAvailable() {
+        return ToolProvider.getSystemJavaCompiler() != null;
+    }
+
+    public static boolean supports(CompiledSchema plan) {
+        if (plan.getFeedbackMode() == FeedbackMode.FIXED_POINT) {
+            for (int u = 0; u < plan.getUnitCount(); ++u) {
+                if (plan.isCyclic(u)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    public static Simulation newSimulation(CompiledSchema plan) {
+        if (isAvailable() && supports(plan)) {
+            try {
+                return new GeneratedSimulation(plan, generate(plan));
+            } catch (IOException | RuntimeException | LinkageError e) {
+                // a failing source kernel or a class the JVM refuses to
+                // load are no reason not to simulate
+                LOG.log(Level.WARNING,
+                        "Code generation failed, using the interpreter", e);
+            }
+        }
+        return new Simulation(plan);
+    }
+
+    public static GeneratedStep generate(CompiledSchema plan)
+            throws IOException {
+        if (!supports(plan)) {
+            throw new IllegalArgumentException(
+                    "Fixed point feedback loops cannot be generated");
+        }
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IOException("No Java compiler available");
+        }
+        String className = "Step" + COUNTER.incrementAndGet();
+        String source = generateSource(plan, className);
+        Map<String,byte[]> classes = compile(compiler, className, source);
+        ClassLoader loader = new ClassLoader(
+                GeneratedStep.class.getClassLoader()) {
+            @Override
+            protected Class<?> findClass(String name)
+                    throws ClassNotFoundException {
+                byte[] bytes = classes.get(name);
+                if (bytes == null) {
+                    throw new ClassNotFoundException(name);
+                }
+                return defineClass(name, bytes, 0, bytes.length);
+            }
+        };
+        try {
+            Class<?> clazz = loader.loadClass(PACKAGE + "." + className);
+            return (GeneratedStep)clazz.getDeclaredConstructor()
+                    .newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    // runs the generated code against the interpreter and compares all the
+    // signal values after each step
+    public static boolean verify(CompiledSchema plan, long steps)
+            throws IOException {
+        Simulation reference = new Simulation(plan);
+        Simulation generated = new GeneratedSimulation(plan, generate(plan));
+        int width = plan.getSlotCount();
+        double[] expected = new double[width];
+        double[] actual = new double[width];
+        for (long i = 0; i < steps; ++i) {
+            reference.step();
+            generated.step();
+            reference.getSignals().copyTo(expected, 0);
+            generated.getSignals().copyTo(actual, 0);
+            if (!Arrays.equals(expected, actual)) {
+                LOG.log(Level.WARNING, "Generated code differs at step {0}",
+                        i);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static String generateSource(CompiledSchema plan, String className) {
+        StringBuilder buf = new StringBuilder();
+        buf.append("package ").append(PACKAGE).append(";\n\n");
+        buf.append("import org.tastefuljava.simuli.engine.GeneratedStep;\n\n");
+        buf.append("public final class ").append(className)
+                .append(" implements GeneratedStep {\n");
+        StringBuilder body = new StringBuilder();
+        int[] chunks = new int[2];
+        for (int half = 0; half < 2; ++half) {
+            chunks[half] = generateHalf(plan, half, body);
+        }
+        buf.append("    @Override\n");
+        buf.append("    public void step(int writeHalf, double[] v,"
+                + " double[] p, double[] s, long time,"
+                + " GeneratedStep.Callback callback) {\n");
+        for (int half = 0; half < 2; ++half) {
+            buf.append(half == 0
+                    ? "        if (writeHalf == 0) {\n" : "        } else {\n");
+            for (int c = 0; c < chunks[half]; ++c) {
+                buf.append("            h").append(half).append('_').append(c)
+                        .append("(v, p, s, time, callback);\n");
+            }
+        }
+        buf.append("        }\n    }\n");
+        buf.append(body);
+        buf.append("}\n");
+        return buf.toString();
+    }
+
+    private static int generateHalf(CompiledSchema plan, int half,
+            StringBuilder body) {
+        int[] links = plan.links(half);
+        int[] inputStart = plan.inputStart();
+        int[] outputStart = plan.outputStart();
+        int[] paramStart = plan.paramStart();
+        int[] stateStart = plan.stateStart();
+        int width = plan.getSlotCount();
+        int writeBase = half*width;
+        int readBase = (1-half)*width;
+        KernelSource src = new KernelSource(body, "            ");
+        int chunk = 0;
+        int n = plan.getPatchCount();
+        for (int p = 0; p < n; ) {
+            body.append("\n    private static void h").append(half)
+                    .append('_').append(chunk++)
+                    .append("(double[] v, double[] p, double[] s, long time,"
+                    + " GeneratedStep.Callback callback) {\n");
+            src.resetStatementCount();
+            while (p < n && src.getStatementCount() < MAX_STATEMENTS) {
+                Kernel kernel = plan.getKernel(p);
+                body.append("        { // ").append(p).append(": ")
+                        .append(comment(plan.getPatch(p).getTitle()))
+                        .append('\n');
+                if (kernel instanceof SourceKernel) {
+                    int outBase = writeBase + outputStart[p];
+                    src.position(links, inputStart[p],
+                            inputStart[p+1] - inputStart[p], outBase,
+                            outputStart[p+1] - outputStart[p],
+                            paramStart[p], stateStart[p]);
+                    for (int i = outputStart[p]; i < outputStart[p+1]; ++i) {
+                        src.assign("v[" + (writeBase + i) + "]",
+                                "v[" + (readBase + i) + "]");
+                    }
+                    ((SourceKernel)kernel).generate(src);
+                } else {
+                    src.statement("callback.evaluate(" + p + ")");
+                }
+                body.append("        }\n");
+                ++p;
+            }
+            body.append("    }\n");
+        }
+        return chunk;
+    }
+
+    private static String comment(String s) {
+        // backslashes too, as unicode escapes are decoded inside comments
+        return s == null ? "" : s.replaceAll("[\\r\\n\\\\]", " ");
+    }
+
+    private static Map<String,byte[]> compile(JavaCompiler compiler,
+            String className, String source) throws IOException {
+        Map<String,byte[]> classes = new HashMap<>();
+        StandardJavaFileManager std
+                = compiler.getStandardFileManager(null, null, null);
+        JavaFileManager fm = new ForwardingJavaFileManager<JavaFileManager>(
+                std) {
+            @Override
+            public JavaFileObject getJavaFileForOutput(Location location,
+                    String name, JavaFileObject.Kind kind, FileObject sibling) {
+                return new SimpleJavaFileObject(uri(name, kind), kind) {
+                    @Override
+                    public OutputStream openOutputStream() {
+                        return new ByteArrayOutputStream() {
+                            @Override
+                            public void close() throws IOException {
+                                super.close();
+                                classes.put(name, toByteArray());
+                            }
+                        };
+                    }
+                };
+            }
+        };
+        JavaFileObject file = new SimpleJavaFileObject(
+                uri(PACKAGE + "." + className, JavaFileObject.Kind.SOURCE),
+                JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+        List<String> options = Arrays.asList("-g:none", "-proc:none",
+                "-classpath", classpath());
+        StringWriter out = new StringWriter();
+        try {
+            boolean ok = compiler.getTask(out, fm, null, options, null,
+                    Arrays.asList(file)).call();
+            if (!ok) {
+                throw new IOException("Compilation failed: " + out);
+            }
+        } finally {
+            fm.close();
+        }
+        return classes;
+    }
+
+    private static String classpath() {
+        String cp = System.getProperty("java.class.path", "");
+        CodeSource cs = GeneratedStep.class.getProtectionDomain()
+                .getCodeSource();
+        if (cs != null && cs.getLocation() != null) {
+            try {
+                String path = new File(cs.getLocation().toURI()).getPath();
+                cp = cp.isEmpty() ? path : path + File.pathSeparator + cp;
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                LOG.log(Level.FINE, "Cannot locate the engine classes", e);
+            }
+        }
+        return cp;
+    }
+
+    private static URI uri(String name, JavaFileObject.Kind kind) {
+        return URI.create("string:///" + name.replace('.', '/')
+                + kind.extension);
+    }
+}
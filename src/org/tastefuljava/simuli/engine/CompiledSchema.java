@@ -0,0 +1,480 @@
+package org.tastefuljava.simuli.engine;
+
+import org.tastefuljava.simuli.model.Expansion;
+import org.tastefuljava.simuli.model.Input;
+import org.tastefuljava.simuli.model.Output;
+import org.tastefuljava.simuli.model.Patch;
+import org.tastefuljava.simuli.model.Schema;
+
+public class CompiledSchema {
+    private static final long FNV_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final PatchGraph graph;
+    private final Expansion expansion;
+    private final FeedbackMode feedbackMode;
+    private final int[] position;
+    private final Patch[] patches;
+    private final Kernel[] kernels;
+    private final int[] inputStart;
+    private final int[] links;
+    private final int[] outputStart;
+    private final int[] paramStart;
+    private final int[] stateStart;
+    private final int[] unitStart;
+    private final int[] unitOf;
+    private final boolean[] cyclic;
+    private final int[] levelStart;
+    private final boolean[] delayed;
+    private final int delayCount;
+    private final int[][] halfLinks;
+    private final int[] sinkStart;
+    private final int[] sinks;
+    private final int[] delayedSinkStart;
+    private final int[] delayedSinks;
+    private final double[] defaultParams;
+    private final int slotCount;
+    private long fingerprint;
+
+    public static CompiledSchema compile(Schema schema,
+            KernelResolver resolver) {
+        return compile(schema, resolver, FeedbackMode.REJECT);
+    }
+
+    public static CompiledSchema compile(Schema schema,
+            KernelResolver resolver, FeedbackMode feedbackMode) {
+        // composite patches are only expanded when there are some
+        Expansion expansion
+                = Expansion.isNeeded(schema) ? Expansion.of(schema) : null;
+        return new CompiledSchema(new PatchGraph(expansion == null
+                ? schema : expansion.getSchema()), expansion, resolver,
+                feedbackMode);
+    }
+
+    private CompiledSchema(PatchGraph graph, Expansion expansion,
+            KernelResolver resolver, FeedbackMode feedbackMode) {
+        this.graph = graph;
+        this.expansion = expansion;
+        this.feedbackMode = feedbackMode;
+        int n = graph.size();
+        int[] comp = new int[n];
+        int compCount = graph.components(comp);
+        int[] compStart = new int[compCount+1];
+        for (int i = 0; i < n; ++i) {
+            ++compStart[comp[i]+1];
+        }
+        for (int c = 0; c < compCount; ++c) {
+            compStart[c+1] += compStart[c];
+        }
+        int[] members = new int[n];
+        int[] fill = new int[compCount];
+        for (int i = 0; i < n; ++i) {
+            members[compStart[comp[i]] + fill[comp[i]]++] = i;
+        }
+        boolean[] compCyclic = new boolean[compCount];
+        for (int c = 0; c < compCount; ++c) {
+            int start = compStart[c];
+            compCyclic[c] = compStart[c+1] - start > 1
+                    || graph.hasSelfLoop(members[start]);
+            if (compCyclic[c]) {
+                if (feedbackMode == FeedbackMode.REJECT) {
+                    throw new IllegalArgumentException(
+                            "Schema contains a feedback loop");
+                }
+                graph.orderComponent(comp, members, start, compStart[c+1]);
+            }
+        }
+
+        // levels of the condensed graph, components being numbered in
+        // topological order
+        int[] compLevel = new int[compCount];
+        int levelCount = 0;
+        for (int c = 0; c < compCount; ++c) {
+            for (int k = compStart[c]; k < compStart[c+1]; ++k) {
+                int i = members[k];
+                for (int e = graph.successorStart(i);
+                        e < graph.successorEnd(i); ++e) {
+                    int d = comp[graph.successor(e)];
+                    if (d != c) {
+                        compLevel[d] = Math.max(compLevel[d], compLevel[c]+1);
+                    }
+                }
+            }
+            levelCount = Math.max(levelCount, compLevel[c]+1);
+        }
+        levelStart = new int[levelCount+1];
+        for (int c = 0; c < compCount; ++c) {
+            ++levelStart[compLevel[c]+1];
+        }
+        for (int l = 0; l < levelCount; ++l) {
+            levelStart[l+1] += levelStart[l];
+        }
+        int[] levelFill = new int[levelCount];
+        int[] units = new int[compCount];
+        for (int c = 0; c < compCount; ++c) {
+            units[levelStart[compLevel[c]] + levelFill[compLevel[c]]++] = c;
+        }
+        unitStart = new int[compCount+1];
+        cyclic = new boolean[compCount];
+        unitOf = new int[n];
+        int[] order = new int[n];
+        for (int u = 0; u < compCount; ++u) {
+            int c = units[u];
+            int size = compStart[c+1] - compStart[c];
+            System.arraycopy(members, compStart[c], order, unitStart[u], size);
+            unitStart[u+1] = unitStart[u] + size;
+            cyclic[u] = compCyclic[c];
+            for (int p = unitStart[u]; p < unitStart[u+1]; ++p) {
+                unitOf[p] = u;
+            }
+        }
+
+        position = new int[n];
+        patches = new Patch[n];
+        kernels = new Kernel[n];
+        inputStart = new int[n+1];
+        outputStart = new int[n+1];
+        paramStart = new int[n+1];
+        stateStart = new int[n+1];
+        for (int p = 0; p < n; ++p) {
+            Patch patch = graph.getPatch(order[p]);
+            Kernel kernel = resolver.resolve(patch);
+            if (kernel == null) {
+                throw new IllegalArgumentException(
+                        "No kernel for patch [" + patch.getTitle() + "]");
+            }
+            position[order[p]] = p;
+            patches[p] = patch;
+            kernels[p] = kernel;
+            inputStart[p+1] = inputStart[p] + patch.getInputCount();
+            outputStart[p+1] = outputStart[p] + patch.getOutputCount();
+            paramStart[p+1] = paramStart[p] + kernel.getParameterCount();
+            stateStart[p+1] = stateStart[p] + kernel.getStateSize();
+        }
+        defaultParams = new double[paramStart[n]];
+        for (int p = 0; p < n; ++p) {
+            for (int i = paramStart[p]; i < paramStart[p+1]; ++i) {
+                defaultParams[i]
+                        = kernels[p].getDefaultParameter(i - paramStart[p]);
+            }
+        }
+
+        int outputCount = outputStart[n];
+        links = new int[inputStart[n]];
+        delayed = new boolean[links.length];
+        int delays = 0;
+        int external = outputCount;
+        for (int p = 0; p < n; ++p) {
+            int k = inputStart[p];
+            for (Input in: patches[p].getInputs()) {
+                Output src = in.getSource();
+                if (src == null) {
+                    links[k] = external++;
+                } else {
+                    int q = position[graph.indexOf(src.getPatch())];
+                    links[k] = outputStart[q] + src.getIndex();
+                    if (feedbackMode == FeedbackMode.DELAY && q >= p) {
+                        // this link closes a loop: read last step's value
+                        delayed[k] = true;
+                        ++delays;
+                    }
+                }
+                ++k;
+            }
+        }
+        delayCount = delays;
+        slotCount = external;
+
+        // one link table per half of the double buffer, indexed by the half
+        // being written
+        halfLinks = new int[2][links.length];
+        for (int half = 0; half < 2; ++half) {
+            int base = half*slotCount;
+            int other = (1-half)*slotCount;
+            for (int k = 0; k < links.length; ++k) {
+                halfLinks[half][k] = (delayed[k] ? other : base) + links[k];
+            }
+        }
+
+        sinkStart = new int[outputCount+1];
+        sinks = readers(false, sinkStart);
+        delayedSinkStart = new int[outputCount+1];
+        delayedSinks = readers(true, delayedSinkStart);
+    }
+
+    // patches reading each output slot, either through a direct link or
+    // through a delayed one
+    private int[] readers(boolean delayedLinks, int[] start) {
+        int n = patches.length;
+        int outputCount = outputStart[n];
+        for (int k = 0; k < links.length; ++k) {
+            if (links[k] < outputCount && delayed[k] == delayedLinks) {
+                ++start[links[k]+1];
+            }
+        }
+        for (int i = 0; i < outputCount; ++i) {
+            start[i+1] += start[i];
+        }
+        int[] result = new int[start[outputCount]];
+        int[] fill = new int[outputCount];
+        for (int p = 0; p < n; ++p) {
+            for (int k = inputStart[p]; k < inputStart[p+1]; ++k) {
+                int slot = links[k];
+                if (slot < outputCount && delayed[k] == delayedLinks) {
+                    result[start[slot] + fill[slot]++] = p;
+                }
+            }
+        }
+        return result;
+    }
+
+    public FeedbackMode getFeedbackMode() {
+        return feedbackMode;
+    }
+
+    public int getPatchCount() {
+        return patches.length;
+    }
+
+    public Patch getPatch(int p) {
+        return patches[p];
+    }
+
+    public int getLevelCount() {
+        return levelStart.length-1;
+    }
+
+    public int getUnitCount() {
+        return cyclic.length;
+    }
+
+    public int unitStart(int u) {
+        return unitStart[u];
+    }
+
+    public int unitEnd(int u) {
+        return unitStart[u+1];
+    }
+
+    public boolean isCyclic(int u) {
+        return cyclic[u];
+    }
+
+    public int unitOf(int p) {
+        return unitOf[p];
+    }
+
+    public int levelStart(int l) {
+        return levelStart[l];
+    }
+
+    public int levelEnd(int l) {
+        return levelStart[l+1];
+    }
+
+    public Kernel getKernel(int p) {
+        return kernels[p];
+    }
+
+    public int indexOf(Patch patch) {
+        if (expansion != null) {
+            Patch copy = expansion.map(patch);
+            if (copy == null) {
+                throw new IllegalArgumentException(
+                        "Patch is composite or not in schema: ["
+                        + patch.getTitle() + "]");
+            }
+            patch = copy;
+        }
+        return position[graph.indexOf(patch)];
+    }
+
+    // index of the patch that owns the signal of the input
+    int indexOf(Input in) {
+        return position[graph.indexOf(flat(in).getPatch())];
+    }
+
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    public int getOutputSlotCount() {
+        return outputStart[patches.length];
+    }
+
+    public int getDelayCount() {
+        return delayCount;
+    }
+
+    public boolean isExternalSlot(int slot) {
+        return slot >= outputStart[patches.length];
+    }
+
+    public int outputSlot(Output out) {
+        if (expansion != null) {
+            Output copy = expansion.map(out);
+            if (copy == null) {
+                throw new IllegalArgumentException(
+                        "Output not in schema: [" + out.getName() + "]");
+            }
+            out = copy;
+        }
+        return outputStart[position[graph.indexOf(out.getPatch())]]
+                + out.getIndex();
+    }
+
+    public int inputSlot(Input in) {
+        return links[inputIndex(in)];
+    }
+
+    public boolean isDelayed(Input in) {
+        return delayed[inputIndex(in)];
+    }
+
+    private int inputIndex(Input in) {
+        in = flat(in);
+        return inputStart[position[graph.indexOf(in.getPatch())]]
+                + in.getIndex();
+    }
+
+    private Input flat(Input in) {
+        if (expansion != null) {
+            Input copy = expansion.map(in);
+            if (copy == null) {
+                throw new IllegalArgumentException(
+                        "Input not in schema: [" + in.getName() + "]");
+            }
+            return copy;
+        }
+        return in;
+    }
+
+    int getMaxUnitOutputCount() {
+        int max = 0;
+        for (int u = 0; u < cyclic.length; ++u) {
+            max = Math.max(max,
+                    outputStart[unitStart[u+1]] - outputStart[unitStart[u]]);
+        }
+        return max;
+    }
+
+    int getMaxUnitStateSize() {
+        int max = 0;
+        for (int u = 0; u < cyclic.length; ++u) {
+            max = Math.max(max,
+                    stateStart[unitStart[u+1]] - stateStart[unitStart[u]]);
+        }
+        return max;
+    }
+
+    public int parameterIndex(Patch patch, int i) {
+        int p = indexOf(patch);
+        if (i < 0 || i >= paramStart[p+1] - paramStart[p]) {
+            throw new IndexOutOfBoundsException(
+                    "Invalid parameter index: " + i);
+        }
+        return paramStart[p] + i;
+    }
+
+    // identifies the layout of the plan: kernels, units, links and slots
+    public long getFingerprint() {
+        if (fingerprint == 0) {
+            long h = FNV_BASIS;
+            h = mix(h, feedbackMode.ordinal());
+            h = mix(h, slotCount);
+            for (int p = 0; p < patches.length; ++p) {
+                Kernel kernel = kernels[p];
+                // lambda class names change from one run to the next
+                h = mix(h, kernel.getClass().isSynthetic()
+                        ? "" : kernel.getClass().getName());
+                h = mix(h, patches[p].getTitle());
+                h = mix(h, inputStart[p+1]);
+                h = mix(h, outputStart[p+1]);
+                h = mix(h, paramStart[p+1]);
+                h = mix(h, stateStart[p+1]);
+            }
+            for (int u = 0; u < getUnitCount(); ++u) {
+                h = mix(h, unitStart[u+1]);
+                h = mix(h, cyclic[u] ? 1 : 0);
+            }
+            for (int[] table: halfLinks) {
+                for (int link: table) {
+                    h = mix(h, link);
+                }
+            }
+            fingerprint = h == 0 ? 1 : h;
+        }
+        return fingerprint;
+    }
+
+    private static long mix(long h, int value) {
+        for (int i = 0; i < 4; ++i) {
+            h = (h ^ (value & 0xFF))*FNV_PRIME;
+            value >>>= 8;
+        }
+        return h;
+    }
+
+    private static long mix(long h, String s) {
+        if (s == null) {
+            return mix(h, -1);
+        }
+        h = mix(h, s.length());
+        for (int i = 0; i < s.length(); ++i) {
+            h = mix(h, s.charAt(i));
+        }
+        return h;
+    }
+
+    public int getParameterCount() {
+        return defaultParams.length;
+    }
+
+    public int getStateSize() {
+        return stateStart[patches.length];
+    }
+
+    double[] defaultParameters() {
+        return defaultParams.clone();
+    }
+
+    Kernel[] kernels() {
+        return kernels;
+    }
+
+    int[] inputStart() {
+        return inputStart;
+    }
+
+    int[] links(int half) {
+        return halfLinks[half];
+    }
+
+    int[] outputStart() {
+        return outputStart;
+    }
+
+    int[] sinkStart() {
+        return sinkStart;
+    }
+
+    int[] sinks() {
+        return sinks;
+    }
+
+    int[] delayedSinkStart() {
+        return delayedSinkStart;
+    }
+
+    int[] delayedSinks() {
+        return delayedSinks;
+    }
+
+    int[] paramStart() {
+        return paramStart;
+    }
+
+    int[] stateStart() {
+        return stateStart;
+    }
+}
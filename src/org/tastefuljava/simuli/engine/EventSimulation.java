@@ -0,0 +1,243 @@
+package org.tastefuljava.simuli.engine;
+
+import java.util.Arrays;
+import org.tastefuljava.simuli.model.Input;
+import org.tastefuljava.simuli.model.Patch;
+
+public class EventSimulation extends Simulation {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final CompiledSchema plan;
+    private final SignalBuffer signals;
+    private final int[] outputStart;
+    private final int[] sinkStart;
+    private final int[] sinks;
+    private final int[] delayedSinkStart;
+    private final int[] delayedSinks;
+    private final long[] lastRun;
+    private final double[] previous;
+    private long[] times = new long[INITIAL_CAPACITY];
+    private int[] units = new int[INITIAL_CAPACITY];
+    private int size;
+    private final boolean[] held;
+    private final int[] heldSlots;
+    private int heldCount;
+    private long eventCount;
+
+    public EventSimulation(CompiledSchema plan) {
+        super(plan);
+        this.plan = plan;
+        this.signals = getSignals();
+        this.outputStart = plan.outputStart();
+        this.sinkStart = plan.sinkStart();
+        this.sinks = plan.sinks();
+        this.delayedSinkStart = plan.delayedSinkStart();
+        this.delayedSinks = plan.delayedSinks();
+        this.lastRun = new long[plan.getUnitCount()];
+        this.previous = new double[plan.getMaxUnitOutputCount()];
+        this.held = new boolean[plan.getOutputSlotCount()];
+        this.heldSlots = new int[plan.getOutputSlotCount()];
+        getFrame().setScheduler((int p, long time)
+                -> schedule(plan.unitOf(p), time));
+        for (int u = 0; u < lastRun.length; ++u) {
+            lastRun[u] = -1;
+            schedule(u, 0);
+        }
+    }
+
+    public boolean isIdle() {
+        return size == 0;
+    }
+
+    public long getNextEventTime() {
+        return size == 0 ? Long.MAX_VALUE : times[0];
+    }
+
+    public int getPendingEventCount() {
+        return size;
+    }
+
+    public long getEventCount() {
+        return eventCount;
+    }
+
+    public void invalidate(Patch patch) {
+        schedule(plan.unitOf(plan.indexOf(patch)), getTime());
+    }
+
+    @Override
+    public void setInput(Input in, double value) {
+        if (Double.doubleToLongBits(getValue(in))
+                != Double.doubleToLongBits(value)) {
+            super.setInput(in, value);
+            schedule(plan.unitOf(plan.indexOf(in)), getTime());
+        }
+    }
+
+    @Override
+    public void setParameter(Patch patch, int i, double value) {
+        if (Double.doubleToLongBits(getParameter(patch, i))
+                != Double.doubleToLongBits(value)) {
+            super.setParameter(patch, i, value);
+            invalidate(patch);
+        }
+    }
+
+    @Override
+    void saveEvents(Checkpoint checkpoint) {
+        checkpoint.setEvents(Arrays.copyOf(times, size),
+                Arrays.copyOf(units, size));
+    }
+
+    @Override
+    void restoreEvents(Checkpoint checkpoint) {
+        Arrays.fill(lastRun, -1);
+        heldCount = 0;
+        Arrays.fill(held, false);
+        size = 0;
+        if (!checkpoint.hasEvents()) {
+            for (int u = 0; u < lastRun.length; ++u) {
+                schedule(u, getTime());
+            }
+        } else {
+            long[] t = checkpoint.eventTimes();
+            int[] u = checkpoint.eventUnits();
+            for (int i = 0; i < t.length; ++i) {
+                schedule(u[i], t[i]);
+            }
+        }
+    }
+
+    @Override
+    public void step() {
+        runUntil(getTime() + 1);
+    }
+
+    @Override
+    public void run(long steps) {
+        runUntil(getTime() + steps);
+    }
+
+    // processes all the events scheduled before the given time, skipping
+    // over the idle steps
+    public void runUntil(long end) {
+        while (size > 0 && times[0] < end) {
+            long time = times[0];
+            int u = units[0];
+            removeFirst();
+            if (time > getTime()) {
+                advanceTo(time);
+            }
+            if (lastRun[u] == time) {
+                continue;
+            }
+            lastRun[u] = time;
+            ++eventCount;
+            int start = outputStart[plan.unitStart(u)];
+            int last = outputStart[plan.unitEnd(u)];
+            for (int slot = start; slot < last; ++slot) {
+                previous[slot-start] = signals.get(slot);
+            }
+            evaluateInPlace(u, u+1);
+            boolean changed = false;
+            for (int slot = start; slot < last; ++slot) {
+                if (Double.doubleToLongBits(signals.get(slot))
+                        != Double.doubleToLongBits(previous[slot-start])) {
+                    outputChanged(u, slot, time);
+                    changed = true;
+                }
+            }
+            if (changed && plan.isCyclic(u)) {
+                // a loop starts from its last values: it keeps settling
+                schedule(u, time + 1);
+            }
+        }
+        if (end > getTime()) {
+            advanceTo(end);
+        }
+    }
+
+    private void outputChanged(int u, int slot, long time) {
+        for (int k = sinkStart[slot]; k < sinkStart[slot+1]; ++k) {
+            int v = plan.unitOf(sinks[k]);
+            if (v != u) {
+                schedule(v, time);
+            }
+        }
+        if (delayedSinkStart[slot] < delayedSinkStart[slot+1]) {
+            for (int k = delayedSinkStart[slot];
+                    k < delayedSinkStart[slot+1]; ++k) {
+                schedule(plan.unitOf(delayedSinks[k]), time + 1);
+            }
+            if (!held[slot]) {
+                held[slot] = true;
+                heldSlots[heldCount++] = slot;
+            }
+        }
+    }
+
+    // delayed links read the other half of the signal buffer, which must
+    // hold the values of the last step before the current one
+    private void advanceTo(long time) {
+        double[] data = signals.data();
+        int width = signals.getWidth();
+        int current = signals.getCurrentHalf()*width;
+        int other = (1 - signals.getCurrentHalf())*width;
+        for (int i = 0; i < heldCount; ++i) {
+            int slot = heldSlots[i];
+            data[other + slot] = data[current + slot];
+            held[slot] = false;
+        }
+        heldCount = 0;
+        setTime(time);
+    }
+
+    private void schedule(int u, long time) {
+        if (size == times.length) {
+            times = Arrays.copyOf(times, 2*size);
+            units = Arrays.copyOf(units, 2*size);
+        }
+        int i = size++;
+        while (i > 0) {
+            int parent = (i-1) >>> 1;
+            if (before(times[parent], units[parent], time, u)) {
+                break;
+            }
+            times[i] = times[parent];
+            units[i] = units[parent];
+            i = parent;
+        }
+        times[i] = time;
+        units[i] = u;
+    }
+
+    private void removeFirst() {
+        long lastTime = times[--size];
+        int lastUnit = units[size];
+        int i = 0;
+        while (true) {
+            int child = 2*i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child+1 < size && before(times[child+1], units[child+1],
+                    times[child], units[child])) {
+                ++child;
+            }
+            if (before(lastTime, lastUnit, times[child], units[child])) {
+                break;
+            }
+            times[i] = times[child];
+            units[i] = units[child];
+            i = child;
+        }
+        if (size > 0) {
+            times[i] = lastTime;
+            units[i] = lastUnit;
+        }
+    }
+
+    private static boolean before(long t1, int u1, long t2, int u2) {
+        return t1 < t2 || t1 == t2 && u1 <= u2;
+    }
+}
@@ -0,0 +1,34 @@
+package org.tastefuljava.simuli.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.tastefuljava.simuli.model.Patch;
+import org.tastefuljava.simuli.model.Schema;
+
+public class FeedbackLoops {
+    public static boolean exist(Schema schema) {
+        return !find(schema).isEmpty();
+    }
+
+    public static List<List<Patch>> find(Schema schema) {
+        PatchGraph graph = new PatchGraph(schema);
+        int n = graph.size();
+        int[] comp = new int[n];
+        int count = graph.components(comp);
+        List<List<Patch>> components = new ArrayList<>(count);
+        for (int c = 0; c < count; ++c) {
+            components.add(new ArrayList<>());
+        }
+        for (int i = 0; i < n; ++i) {
+            components.get(comp[i]).add(graph.getPatch(i));
+        }
+        List<List<Patch>> result = new ArrayList<>();
+        for (List<Patch> component: components) {
+            if (component.size() > 1 || graph.hasSelfLoop(
+                    graph.indexOf(component.get(0)))) {
+                result.add(component);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,18 @@
+package org.tastefuljava.simuli.engine;
+
+public enum FeedbackMode {
+    REJECT("Reject"),
+    DELAY("Unit delay"),
+    FIXED_POINT("Fixed point");
+
+    private final String title;
+
+    private FeedbackMode(String title) {
+        this.title = title;
+    }
+
+    @Override
+    public String toString() {
+        return title;
+    }
+}
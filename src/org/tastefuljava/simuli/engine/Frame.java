@@ -0,0 +1,185 @@
+package org.tastefuljava.simuli.engine;
+
+public class Frame {
+    private final CompiledSchema plan;
+    private final int width;
+    private final int lanes;
+    private final int[] inputStart;
+    private int[] links;
+    private final int[] outputStart;
+    private final int[] paramStart;
+    private final int[] stateStart;
+    private final double[] values;
+    private final double[] params;
+    private final double[] state;
+    private Scheduler scheduler;
+    private long time;
+    private int lane;
+    private int patch;
+    private int inBase;
+    private int inCount;
+    private int outBase;
+    private int outCount;
+    private int paramBase;
+    private int stateBase;
+    private int writeHalf;
+    private int readHalf;
+    private double[] outputScratch;
+    private double[] stateScratch;
+
+    Frame(CompiledSchema plan, SignalBuffer signals, double[] params,
+            double[] state) {
+        this.plan = plan;
+        this.width = signals.getWidth();
+        this.lanes = signals.getLaneCount();
+        this.inputStart = plan.inputStart();
+        this.outputStart = plan.outputStart();
+        this.paramStart = plan.paramStart();
+        this.stateStart = plan.stateStart();
+        this.values = signals.data();
+        this.params = params;
+        this.state = state;
+    }
+
+    void setTime(long time) {
+        this.time = time;
+    }
+
+    void setScheduler(Scheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    void setLane(int lane) {
+        this.lane = lane;
+    }
+
+    // selects the half of the signal buffer written by the kernels; outputs
+    // start with the value they have in the committed half
+    void target(int writeHalf, int committedHalf) {
+        this.links = plan.links(writeHalf);
+        this.writeHalf = writeHalf;
+        this.readHalf = committedHalf;
+    }
+
+    int getWriteHalf() {
+        return writeHalf;
+    }
+
+    int getReadHalf() {
+        return readHalf;
+    }
+
+    void position(int p) {
+        patch = p;
+        inBase = inputStart[p];
+        inCount = inputStart[p+1] - inBase;
+        outBase = writeHalf*width + outputStart[p];
+        outCount = outputStart[p+1] - outputStart[p];
+        if (readHalf != writeHalf) {
+            System.arraycopy(values, (readHalf*width + outputStart[p])*lanes,
+                    values, outBase*lanes, outCount*lanes);
+        }
+        paramBase = paramStart[p];
+        stateBase = stateStart[p];
+    }
+
+    double[] outputScratch(int size) {
+        if (outputScratch == null || outputScratch.length < size) {
+            outputScratch = new double[size];
+        }
+        return outputScratch;
+    }
+
+    double[] stateScratch(int size) {
+        if (stateScratch == null || stateScratch.length < size) {
+            stateScratch = new double[size];
+        }
+        return stateScratch;
+    }
+
+    int getLaneCount() {
+        return lanes;
+    }
+
+    double[] values() {
+        return values;
+    }
+
+    double[] params() {
+        return params;
+    }
+
+    double[] state() {
+        return state;
+    }
+
+    int inputSlot(int i) {
+        assert i >= 0 && i < inCount;
+        return links[inBase + i];
+    }
+
+    int outputSlot(int i) {
+        assert i >= 0 && i < outCount;
+        return outBase + i;
+    }
+
+    int parameterIndex(int i) {
+        assert i >= 0 && paramBase + i < paramStart[paramStart.length-1];
+        return paramBase + i;
+    }
+
+    int stateIndex(int i) {
+        assert i >= 0 && stateBase + i < stateStart[stateStart.length-1];
+        return stateBase + i;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    // asks for the patch to be evaluated again after the given number of
+    // steps; only event driven simulations need it, the others evaluate
+    // every patch at each step anyway
+    public void schedule(long delay) {
+        if (delay < 1) {
+            throw new IllegalArgumentException("Invalid delay: " + delay);
+        }
+        if (scheduler != null) {
+            scheduler.schedule(patch, time + delay);
+        }
+    }
+
+    public int getInputCount() {
+        return inCount;
+    }
+
+    public double input(int i) {
+        return values[inputSlot(i)*lanes + lane];
+    }
+
+    public int getOutputCount() {
+        return outCount;
+    }
+
+    public void output(int i, double value) {
+        values[outputSlot(i)*lanes + lane] = value;
+    }
+
+    public void outputAll(double value) {
+        for (int i = 0; i < outCount; ++i) {
+            values[(outBase + i)*lanes + lane] = value;
+        }
+    }
+
+    public double parameter(int i) {
+        return params[parameterIndex(i)*lanes + lane];
+    }
+
+    public double state(int i) {
+        return state[stateIndex(i)*lanes + lane];
+    }
+
+    public void setState(int i, double value) {
+        state[stateIndex(i)*lanes + lane] = value;
+    }
+}
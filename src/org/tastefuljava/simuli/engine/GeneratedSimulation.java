@@ -0,0 +1,30 @@
+package org.tastefuljava.simuli.engine;
+
+public class GeneratedSimulation extends Simulation {
+    private final GeneratedStep code;
+    private final GeneratedStep.Callback callback;
+    private final double[] values;
+    private final double[] params;
+    private final double[] state;
+
+    public GeneratedSimulation(CompiledSchema plan, GeneratedStep code) {
+        super(plan);
+        if (!CodeGenerator.supports(plan)) {
+            throw new IllegalArgumentException(
+                    "Fixed point feedback loops cannot be generated");
+        }
+        this.code = code;
+        this.callback = (int p) -> evaluatePatch(getFrame(), p);
+        this.values = getSignals().data();
+        this.params = getParameters();
+        this.state = getState();
+    }
+
+    @Override
+    protected void evaluate() {
+        Frame frame = getFrame();
+        frame.setTime(getTime());
+        code.step(frame.getWriteHalf(), values, params, state, getTime(),
+                callback);
+    }
+}
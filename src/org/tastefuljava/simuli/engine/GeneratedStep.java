@@ -0,0 +1,10 @@
+package org.tastefuljava.simuli.engine;
+
+public interface GeneratedStep {
+    public void step(int writeHalf, double[] v, double[] p, double[] s,
+            long time, Callback callback);
+
+    public interface Callback {
+        public void evaluate(int patch);
+    }
+}
@@ -0,0 +1,328 @@
+package org.tastefuljava.simuli.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.tastefuljava.simuli.model.Output;
+import org.tastefuljava.simuli.model.Patch;
+import org.tastefuljava.simuli.model.Schema;
+
+// a static view of the graph of a schema; it must be rebuilt when the schema
+// changes, and is not thread-safe
+public class GraphAnalysis {
+    private final PatchGraph graph;
+    private final int[] predStart;
+    private final int[] pred;
+    private final int[] comp;
+    private final int compCount;
+    private final int[] depth;
+    private final int[] parent;
+    private final int[] weak;
+    private final int weakCount;
+    private final int[] mark;
+    private int stamp;
+
+    public GraphAnalysis(Schema schema) {
+        graph = new PatchGraph(schema);
+        int n = graph.size();
+        predStart = new int[n+1];
+        for (int i = 0; i < n; ++i) {
+            for (int k = graph.successorStart(i); k < graph.successorEnd(i);
+                    ++k) {
+                ++predStart[graph.successor(k)+1];
+            }
+        }
+        for (int i = 0; i < n; ++i) {
+            predStart[i+1] += predStart[i];
+        }
+        pred = new int[predStart[n]];
+        int[] fill = new int[n];
+        for (int i = 0; i < n; ++i) {
+            for (int k = graph.successorStart(i); k < graph.successorEnd(i);
+                    ++k) {
+                int j = graph.successor(k);
+                pred[predStart[j] + fill[j]++] = i;
+            }
+        }
+        comp = new int[n];
+        compCount = graph.components(comp);
+        depth = new int[n];
+        parent = new int[n];
+        computeDepths();
+        weak = new int[n];
+        weakCount = computeWeakComponents();
+        mark = new int[n];
+    }
+
+    public int getPatchCount() {
+        return graph.size();
+    }
+
+    public boolean isAcyclic() {
+        if (compCount < graph.size()) {
+            return false;
+        }
+        for (int i = 0; i < graph.size(); ++i) {
+            if (graph.hasSelfLoop(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // the patches of a feedback loop appear together, in no specific order
+    public List<Patch> topologicalOrder() {
+        int n = graph.size();
+        int[] start = new int[compCount+1];
+        for (int i = 0; i < n; ++i) {
+            ++start[comp[i]+1];
+        }
+        for (int c = 0; c < compCount; ++c) {
+            start[c+1] += start[c];
+        }
+        Patch[] order = new Patch[n];
+        for (int i = 0; i < n; ++i) {
+            order[start[comp[i]]++] = graph.getPatch(i);
+        }
+        return toList(order);
+    }
+
+    // the cones contain the patch itself only when it's on a feedback loop,
+    // as in isReachable
+    public List<Patch> downstream(Patch patch) {
+        return cone(graph.indexOf(patch), true);
+    }
+
+    public List<Patch> upstream(Patch patch) {
+        return cone(graph.indexOf(patch), false);
+    }
+
+    public boolean isReachable(Patch from, Patch to) {
+        int target = graph.indexOf(to);
+        cone(graph.indexOf(from), true);
+        return mark[target] == stamp && (target != graph.indexOf(from)
+                || graph.hasSelfLoop(target) || isInLoop(target));
+    }
+
+    public int getFanOut(Output out) {
+        return out.getSinkCount();
+    }
+
+    // number of distinct patches fed by the patch
+    public int getFanOut(Patch patch) {
+        int i = graph.indexOf(patch);
+        int count = 0;
+        ++stamp;
+        for (int k = graph.successorStart(i); k < graph.successorEnd(i);
+                ++k) {
+            int j = graph.successor(k);
+            if (mark[j] != stamp) {
+                mark[j] = stamp;
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    // number of distinct patches feeding the patch
+    public int getFanIn(Patch patch) {
+        int i = graph.indexOf(patch);
+        int count = 0;
+        ++stamp;
+        for (int k = predStart[i]; k < predStart[i+1]; ++k) {
+            if (mark[pred[k]] != stamp) {
+                mark[pred[k]] = stamp;
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    // result[k] is the number of outputs with k sinks; the last entry
+    // counts the outputs with more sinks
+    public int[] getFanOutHistogram(int max) {
+        int[] result = new int[max+2];
+        for (int i = 0; i < graph.size(); ++i) {
+            for (Output out: graph.getPatch(i).getOutputs()) {
+                ++result[Math.min(out.getSinkCount(), max+1)];
+            }
+        }
+        return result;
+    }
+
+    // length of the longest path leading to the patch, feedback loops
+    // counting as a single step
+    public int getDepth(Patch patch) {
+        return depth[comp[graph.indexOf(patch)]];
+    }
+
+    public int getMaxDepth() {
+        int max = 0;
+        for (int c = 0; c < compCount; ++c) {
+            max = Math.max(max, depth[c]);
+        }
+        return max;
+    }
+
+    // a longest path through the schema, from a source
+    public List<Patch> criticalPath() {
+        if (compCount == 0) {
+            return new ArrayList<>();
+        }
+        int last = 0;
+        for (int c = 1; c < compCount; ++c) {
+            if (depth[c] > depth[last]) {
+                last = c;
+            }
+        }
+        int i = representative(last);
+        Patch[] path = new Patch[depth[last]+1];
+        for (int k = path.length; --k >= 0; ) {
+            path[k] = graph.getPatch(i);
+            i = parent[comp[i]];
+        }
+        return toList(path);
+    }
+
+    public int getComponentCount() {
+        return weakCount;
+    }
+
+    // index of the connected component, links taken in both directions
+    public int componentOf(Patch patch) {
+        return weak[graph.indexOf(patch)];
+    }
+
+    public List<List<Patch>> components() {
+        List<List<Patch>> result = new ArrayList<>(weakCount);
+        for (int c = 0; c < weakCount; ++c) {
+            result.add(new ArrayList<>());
+        }
+        for (int i = 0; i < graph.size(); ++i) {
+            result.get(weak[i]).add(graph.getPatch(i));
+        }
+        return result;
+    }
+
+    private List<Patch> cone(int root, boolean down) {
+        int[] queue = new int[graph.size()];
+        int head = 0;
+        int tail = 0;
+        ++stamp;
+        mark[root] = stamp;
+        queue[tail++] = root;
+        while (head < tail) {
+            int i = queue[head++];
+            int start = down ? graph.successorStart(i) : predStart[i];
+            int end = down ? graph.successorEnd(i) : predStart[i+1];
+            for (int k = start; k < end; ++k) {
+                int j = down ? graph.successor(k) : pred[k];
+                if (mark[j] != stamp) {
+                    mark[j] = stamp;
+                    queue[tail++] = j;
+                }
+            }
+        }
+        int first = graph.hasSelfLoop(root) || isInLoop(root) ? 0 : 1;
+        Patch[] result = new Patch[tail-first];
+        for (int k = first; k < tail; ++k) {
+            result[k-first] = graph.getPatch(queue[k]);
+        }
+        return toList(result);
+    }
+
+    private boolean isInLoop(int i) {
+        int c = comp[i];
+        for (int k = predStart[i]; k < predStart[i+1]; ++k) {
+            if (comp[pred[k]] == c) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // components are numbered in topological order, so a single pass in
+    // that order sees all the predecessors of a component first
+    private void computeDepths() {
+        int n = graph.size();
+        int[] start = new int[compCount+1];
+        for (int i = 0; i < n; ++i) {
+            ++start[comp[i]+1];
+        }
+        for (int c = 0; c < compCount; ++c) {
+            start[c+1] += start[c];
+        }
+        int[] members = new int[n];
+        int[] fill = new int[compCount];
+        for (int i = 0; i < n; ++i) {
+            members[start[comp[i]] + fill[comp[i]]++] = i;
+        }
+        Arrays.fill(parent, -1);
+        for (int c = 0; c < compCount; ++c) {
+            for (int m = start[c]; m < start[c+1]; ++m) {
+                int i = members[m];
+                for (int k = graph.successorStart(i);
+                        k < graph.successorEnd(i); ++k) {
+                    int d = comp[graph.successor(k)];
+                    if (d != c && depth[c] + 1 > depth[d]) {
+                        depth[d] = depth[c] + 1;
+                        parent[d] = i;
+                    }
+                }
+            }
+        }
+    }
+
+    private int representative(int c) {
+        for (int i = 0; i < graph.size(); ++i) {
+            if (comp[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int computeWeakComponents() {
+        int n = graph.size();
+        Arrays.fill(weak, -1);
+        int[] queue = new int[n];
+        int count = 0;
+        for (int root = 0; root < n; ++root) {
+            if (weak[root] >= 0) {
+                continue;
+            }
+            int head = 0;
+            int tail = 0;
+            weak[root] = count;
+            queue[tail++] = root;
+            while (head < tail) {
+                int i = queue[head++];
+                for (int k = graph.successorStart(i);
+                        k < graph.successorEnd(i); ++k) {
+                    int j = graph.successor(k);
+                    if (weak[j] < 0) {
+                        weak[j] = count;
+                        queue[tail++] = j;
+                    }
+                }
+                for (int k = predStart[i]; k < predStart[i+1]; ++k) {
+                    int j = pred[k];
+                    if (weak[j] < 0) {
+                        weak[j] = count;
+                        queue[tail++] = j;
+                    }
+                }
+            }
+            ++count;
+        }
+        return count;
+    }
+
+    private static List<Patch> toList(Patch[] array) {
+        List<Patch> result = new ArrayList<>(array.length);
+        for (Patch patch: array) {
+            result.add(patch);
+        }
+        return result;
+    }
+}
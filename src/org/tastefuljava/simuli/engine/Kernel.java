@@ -0,0 +1,17 @@
+package org.tastefuljava.simuli.engine;
+
+public interface Kernel {
+    default public int getParameterCount() {
+        return 0;
+    }
+
+    default public double getDefaultParameter(int i) {
+        return 0;
+    }
+
+    default public int getStateSize() {
+        return 0;
+    }
+
+    public void evaluate(Frame frame);
+}
@@ -0,0 +1,7 @@
+package org.tastefuljava.simuli.engine;
+
+import org.tastefuljava.simuli.model.Patch;
+
+public interface KernelResolver {
+    public Kernel resolve(Patch patch);
+}
@@ -0,0 +1,100 @@
+package org.tastefuljava.simuli.engine;
+
+public class KernelSource {
+    private final StringBuilder buf;
+    private final String indent;
+    private int inBase;
+    private int inCount;
+    private int outBase;
+    private int outCount;
+    private int paramBase;
+    private int stateBase;
+    private int[] links;
+    private int locals;
+    private int statements;
+
+    KernelSource(StringBuilder buf, String indent) {
+        this.buf = buf;
+        this.indent = indent;
+    }
+
+    void position(int[] links, int inBase, int inCount, int outBase,
+            int outCount, int paramBase, int stateBase) {
+        this.links = links;
+        this.inBase = inBase;
+        this.inCount = inCount;
+        this.outBase = outBase;
+        this.outCount = outCount;
+        this.paramBase = paramBase;
+        this.stateBase = stateBase;
+        this.locals = 0;
+    }
+
+    int getStatementCount() {
+        return statements;
+    }
+
+    void resetStatementCount() {
+        statements = 0;
+    }
+
+    public int getInputCount() {
+        return inCount;
+    }
+
+    public int getOutputCount() {
+        return outCount;
+    }
+
+    public String input(int i) {
+        checkIndex(i, inCount);
+        return "v[" + links[inBase + i] + "]";
+    }
+
+    public String output(int i) {
+        checkIndex(i, outCount);
+        return "v[" + (outBase + i) + "]";
+    }
+
+    public String parameter(int i) {
+        return "p[" + (paramBase + i) + "]";
+    }
+
+    public String state(int i) {
+        return "s[" + (stateBase + i) + "]";
+    }
+
+    public String time() {
+        return "time";
+    }
+
+    public void statement(String code) {
+        buf.append(indent).append(code).append(";\n");
+        ++statements;
+    }
+
+    public void assign(String lvalue, String expr) {
+        statement(lvalue + " = " + expr);
+    }
+
+    public String local(String expr) {
+        String name = "t" + locals++;
+        statement("final double " + name + " = " + expr);
+        return name;
+    }
+
+    public void outputAll(String expr) {
+        if (outCount > 1) {
+            expr = local(expr);
+        }
+        for (int i = 0; i < outCount; ++i) {
+            assign(output(i), expr);
+        }
+    }
+
+    private static void checkIndex(int i, int count) {
+        if (i < 0 || i >= count) {
+            throw new IndexOutOfBoundsException("Invalid pin index: " + i);
+        }
+    }
+}
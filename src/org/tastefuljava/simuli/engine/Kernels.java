@@ -0,0 +1,292 @@
+package org.tastefuljava.simuli.engine;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class Kernels {
+    public static final Kernel PASS_THROUGH = new StandardKernel() {
+        @Override
+        public void evaluate(Frame f) {
+            int n = f.getOutputCount();
+            int m = Math.min(n, f.getInputCount());
+            for (int i = 0; i < m; ++i) {
+                f.output(i, f.input(i));
+            }
+            for (int i = m; i < n; ++i) {
+                f.output(i, 0);
+            }
+        }
+
+        @Override
+        public void evaluate(BatchFrame f) {
+            double[] v = f.getSignals();
+            int lanes = f.getLaneCount();
+            int n = f.getOutputCount();
+            int m = Math.min(n, f.getInputCount());
+            for (int i = 0; i < m; ++i) {
+                System.arraycopy(v, f.inputOffset(i), v, f.outputOffset(i),
+                        lanes);
+            }
+            for (int i = m; i < n; ++i) {
+                int out = f.outputOffset(i);
+                Arrays.fill(v, out, out + lanes, 0);
+            }
+        }
+
+        @Override
+        public void generate(KernelSource src) {
+            int n = src.getOutputCount();
+            int m = Math.min(n, src.getInputCount());
+            for (int i = 0; i < m; ++i) {
+                src.assign(src.output(i), src.input(i));
+            }
+            for (int i = m; i < n; ++i) {
+                src.assign(src.output(i), "0.0");
+            }
+        }
+    };
+
+    public static final Kernel SUM = new StandardKernel() {
+        @Override
+        public void evaluate(Frame f) {
+            double sum = 0;
+            for (int i = 0; i < f.getInputCount(); ++i) {
+                sum += f.input(i);
+            }
+            f.outputAll(sum);
+        }
+
+        @Override
+        public void evaluate(BatchFrame f) {
+            double[] v = f.getSignals();
+            double[] sum = f.getScratch();
+            int lanes = f.getLaneCount();
+            Arrays.fill(sum, 0);
+            for (int i = 0; i < f.getInputCount(); ++i) {
+                int in = f.inputOffset(i);
+                for (int l = 0; l < lanes; ++l) {
+                    sum[l] += v[in + l];
+                }
+            }
+            f.outputAll(sum, 0);
+        }
+
+        @Override
+        public void generate(KernelSource src) {
+            StringBuilder expr = new StringBuilder("0.0");
+            for (int i = 0; i < src.getInputCount(); ++i) {
+                expr.append(" + ").append(src.input(i));
+            }
+            src.outputAll(expr.toString());
+        }
+    };
+
+    public static final Kernel PRODUCT = new StandardKernel() {
+        @Override
+        public void evaluate(Frame f) {
+            double product = 1;
+            for (int i = 0; i < f.getInputCount(); ++i) {
+                product *= f.input(i);
+            }
+            f.outputAll(product);
+        }
+
+        @Override
+        public void evaluate(BatchFrame f) {
+            double[] v = f.getSignals();
+            double[] product = f.getScratch();
+            int lanes = f.getLaneCount();
+            Arrays.fill(product, 1);
+            for (int i = 0; i < f.getInputCount(); ++i) {
+                int in = f.inputOffset(i);
+                for (int l = 0; l < lanes; ++l) {
+                    product[l] *= v[in + l];
+                }
+            }
+            f.outputAll(product, 0);
+        }
+
+        @Override
+        public void generate(KernelSource src) {
+            StringBuilder expr = new StringBuilder("1.0");
+            for (int i = 0; i < src.getInputCount(); ++i) {
+                expr.append(" * ").append(src.input(i));
+            }
+            src.outputAll(expr.toString());
+        }
+    };
+
+    public static final Kernel CONSTANT = new StandardKernel() {
+        @Override
+        public int getParameterCount() {
+            return 1;
+        }
+
+        @Override
+        public void evaluate(Frame f) {
+            f.outputAll(f.parameter(0));
+        }
+
+        @Override
+        public void evaluate(BatchFrame f) {
+            f.outputAll(f.getParameters(), f.parameterOffset(0));
+        }
+
+        @Override
+        public void generate(KernelSource src) {
+            src.outputAll(src.parameter(0));
+        }
+    };
+
+    public static final Kernel GAIN = new StandardKernel() {
+        @Override
+        public int getParameterCount() {
+            return 1;
+        }
+
+        @Override
+        public double getDefaultParameter(int i) {
+            return 1;
+        }
+
+        @Override
+        public void evaluate(Frame f) {
+            double in = f.getInputCount() == 0 ? 0 : f.input(0);
+            f.outputAll(in*f.parameter(0));
+        }
+
+        @Override
+        public void evaluate(BatchFrame f) {
+            double[] result = f.getScratch();
+            if (f.getInputCount() == 0) {
+                Arrays.fill(result, 0);
+            } else {
+                double[] v = f.getSignals();
+                double[] p = f.getParameters();
+                int in = f.inputOffset(0);
+                int gain = f.parameterOffset(0);
+                for (int l = 0; l < f.getLaneCount(); ++l) {
+                    result[l] = v[in + l]*p[gain + l];
+                }
+            }
+            f.outputAll(result, 0);
+        }
+
+        @Override
+        public void generate(KernelSource src) {
+            String in = src.getInputCount() == 0 ? "0.0" : src.input(0);
+            src.outputAll(in + " * " + src.parameter(0));
+        }
+    };
+
+    public static final Kernel DELAY = new StandardKernel() {
+        @Override
+        public int getStateSize() {
+            return 1;
+        }
+
+        @Override
+        public void evaluate(Frame f) {
+            double out = f.state(0);
+            double in = f.getInputCount() == 0 ? 0 : f.input(0);
+            f.outputAll(out);
+            f.setState(0, in);
+            if (in != out) {
+                f.schedule(1);
+            }
+        }
+
+        @Override
+        public void evaluate(BatchFrame f) {
+            double[] s = f.getState();
+            int st = f.stateOffset(0);
+            f.outputAll(s, st);
+            if (f.getInputCount() == 0) {
+                Arrays.fill(s, st, st + f.getLaneCount(), 0);
+            } else {
+                System.arraycopy(f.getSignals(), f.inputOffset(0), s, st,
+                        f.getLaneCount());
+            }
+        }
+
+        @Override
+        public void generate(KernelSource src) {
+            src.outputAll(src.state(0));
+            src.assign(src.state(0),
+                    src.getInputCount() == 0 ? "0.0" : src.input(0));
+        }
+    };
+
+    public static final Kernel INTEGRATOR = new StandardKernel() {
+        @Override
+        public int getStateSize() {
+            return 1;
+        }
+
+        @Override
+        public void evaluate(Frame f) {
+            double previous = f.state(0);
+            double sum = previous;
+            for (int i = 0; i < f.getInputCount(); ++i) {
+                sum += f.input(i);
+            }
+            f.setState(0, sum);
+            f.outputAll(sum);
+            if (sum != previous) {
+                f.schedule(1);
+            }
+        }
+
+        @Override
+        public void evaluate(BatchFrame f) {
+            double[] v = f.getSignals();
+            double[] s = f.getState();
+            int st = f.stateOffset(0);
+            int lanes = f.getLaneCount();
+            for (int i = 0; i < f.getInputCount(); ++i) {
+                int in = f.inputOffset(i);
+                for (int l = 0; l < lanes; ++l) {
+                    s[st + l] += v[in + l];
+                }
+            }
+            f.outputAll(s, st);
+        }
+
+        @Override
+        public void generate(KernelSource src) {
+            StringBuilder expr = new StringBuilder(src.state(0));
+            for (int i = 0; i < src.getInputCount(); ++i) {
+                expr.append(" + ").append(src.input(i));
+            }
+            String sum = src.local(expr.toString());
+            src.assign(src.state(0), sum);
+            src.outputAll(sum);
+        }
+    };
+
+    private static final Map<String,Kernel> STANDARD_KERNELS
+            = buildStandardKernels();
+
+    public static final KernelResolver STANDARD = (patch) -> {
+        String title = patch.getTitle();
+        Kernel kernel = title == null
+                ? null : STANDARD_KERNELS.get(title.trim().toLowerCase());
+        return kernel == null ? PASS_THROUGH : kernel;
+    };
+
+    private abstract static class StandardKernel
+            implements BatchKernel, SourceKernel {
+    }
+
+    private static Map<String,Kernel> buildStandardKernels() {
+        Map<String,Kernel> result = new HashMap<>();
+        result.put("sum", SUM);
+        result.put("product", PRODUCT);
+        result.put("constant", CONSTANT);
+        result.put("gain", GAIN);
+        result.put("delay", DELAY);
+        result.put("integrator", INTEGRATOR);
+        return result;
+    }
+}
@@ -0,0 +1,121 @@
+package org.tastefuljava.simuli.engine;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+public class ParallelSimulation extends Simulation {
+    public static final int DEFAULT_THRESHOLD = 256;
+
+    private final ForkJoinPool pool;
+    private final int threshold;
+    private final int grain;
+    private final boolean parallel;
+    // one frame per worker thread of the pool, by pool index, and one for
+    // the calling thread; they are created on first use and reused from step
+    // to step
+    private final Frame[] workerFrames;
+
+    public ParallelSimulation(CompiledSchema plan) {
+        this(plan, ForkJoinPool.commonPool(), DEFAULT_THRESHOLD);
+    }
+
+    public ParallelSimulation(CompiledSchema plan, ForkJoinPool pool,
+            int threshold) {
+        super(plan);
+        if (threshold < 1) {
+            throw new IllegalArgumentException(
+                    "Invalid threshold: " + threshold);
+        }
+        this.pool = pool;
+        this.threshold = threshold;
+        this.grain = Math.max(1, threshold/pool.getParallelism());
+        this.parallel = plan.getPatchCount() >= threshold;
+        // pool indices are spread up to the next power of two
+        int slots = 1;
+        while (slots < pool.getParallelism()) {
+            slots <<= 1;
+        }
+        this.workerFrames = new Frame[slots + 1];
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    @Override
+    protected void evaluate() {
+        if (!parallel) {
+            super.evaluate();
+            return;
+        }
+        CompiledSchema plan = getPlan();
+        int levelCount = plan.getLevelCount();
+        int l = 0;
+        while (l < levelCount) {
+            int start = plan.levelStart(l);
+            int end = plan.levelEnd(l);
+            if (end - start >= threshold) {
+                pool.invoke(new LevelTask(start, end));
+                ++l;
+            } else {
+                // run consecutive narrow levels in one go on this thread
+                while (++l < levelCount
+                        && plan.levelEnd(l) - plan.levelStart(l) < threshold) {
+                    end = plan.levelEnd(l);
+                }
+                evaluate(getFrame(), start, end);
+            }
+        }
+    }
+
+    private Frame workerFrame() {
+        Thread thread = Thread.currentThread();
+        int index = 0;
+        if (thread instanceof ForkJoinWorkerThread
+                && ((ForkJoinWorkerThread)thread).getPool() == pool) {
+            index = ((ForkJoinWorkerThread)thread).getPoolIndex() + 1;
+        }
+        Frame result;
+        if (index < workerFrames.length) {
+            // a slot is only ever used by one thread at a time
+            result = workerFrames[index];
+            if (result == null) {
+                result = newFrame();
+                workerFrames[index] = result;
+            }
+        } else {
+            // a compensating thread beyond the parallelism: rare enough
+            result = newFrame();
+        }
+        Frame frame = getFrame();
+        result.target(frame.getWriteHalf(), frame.getReadHalf());
+        return result;
+    }
+
+    private class LevelTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int start;
+        private final int end;
+
+        private LevelTask(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= grain) {
+                ParallelSimulation.this.evaluate(workerFrame(), start, end);
+            } else {
+                int mid = (start + end) >>> 1;
+                invokeAll(new LevelTask(start, mid), new LevelTask(mid, end));
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.tastefuljava.simuli.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.tastefuljava.simuli.model.Patch;
+
+public class ParameterGrid {
+    private final List<Axis> axes = new ArrayList<>();
+
+    public void addAxis(Patch patch, int param, double... values) {
+        if (values.length == 0) {
+            throw new IllegalArgumentException("Empty axis");
+        }
+        axes.add(new Axis(patch, param, values.clone()));
+    }
+
+    public int getAxisCount() {
+        return axes.size();
+    }
+
+    public Patch getPatch(int axis) {
+        return axes.get(axis).patch;
+    }
+
+    public int getParameter(int axis) {
+        return axes.get(axis).param;
+    }
+
+    public long size() {
+        long size = 1;
+        for (Axis axis: axes) {
+            size = Math.multiplyExact(size, axis.values.length);
+        }
+        return size;
+    }
+
+    // the first axis varies fastest
+    public void configuration(long index, double[] values) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException(
+                    "Invalid configuration: " + index);
+        }
+        for (int i = 0; i < axes.size(); ++i) {
+            double[] axis = axes.get(i).values;
+            values[i] = axis[(int)(index % axis.length)];
+            index /= axis.length;
+        }
+    }
+
+    private static class Axis {
+        private final Patch patch;
+        private final int param;
+        private final double[] values;
+
+        private Axis(Patch patch, int param, double[] values) {
+            this.patch = patch;
+            this.param = param;
+            this.values = values;
+        }
+    }
+}
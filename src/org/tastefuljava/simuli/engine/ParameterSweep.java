@@ -0,0 +1,98 @@
+package org.tastefuljava.simuli.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.tastefuljava.simuli.model.Output;
+
+public class ParameterSweep {
+    private final CompiledSchema plan;
+    private final ParameterGrid grid;
+    private final List<Output> probes = new ArrayList<>();
+    private long steps = 1;
+
+    public ParameterSweep(CompiledSchema plan, ParameterGrid grid) {
+        this.plan = plan;
+        this.grid = grid;
+    }
+
+    public void addProbe(Output out) {
+        plan.outputSlot(out);
+        probes.add(out);
+    }
+
+    public long getSteps() {
+        return steps;
+    }
+
+    public void setSteps(long steps) {
+        this.steps = steps;
+    }
+
+    public void run(SweepSink sink)
+            throws InterruptedException, ExecutionException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            run(executor, threads, sink);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void run(ExecutorService executor, int workers, SweepSink sink)
+            throws InterruptedException, ExecutionException {
+        long size = grid.size();
+        int axisCount = grid.getAxisCount();
+        int[] params = new int[axisCount];
+        for (int i = 0; i < axisCount; ++i) {
+            params[i] = plan.parameterIndex(grid.getPatch(i),
+                    grid.getParameter(i));
+        }
+        int[] slots = new int[probes.size()];
+        for (int i = 0; i < slots.length; ++i) {
+            slots[i] = plan.outputSlot(probes.get(i));
+        }
+        AtomicLong next = new AtomicLong();
+        AtomicBoolean failed = new AtomicBoolean();
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int w = 0; w < workers; ++w) {
+            tasks.add(() -> {
+                try {
+                    double[] values = new double[axisCount];
+                    for (long run = next.getAndIncrement();
+                            run < size && !failed.get();
+                            run = next.getAndIncrement()) {
+                        grid.configuration(run, values);
+                        Simulation sim = new Simulation(plan);
+                        double[] p = sim.getParameters();
+                        for (int i = 0; i < axisCount; ++i) {
+                            p[params[i]] = values[i];
+                        }
+                        sim.run(steps);
+                        double[] results = new double[slots.length];
+                        for (int i = 0; i < slots.length; ++i) {
+                            results[i] = sim.getSignals().get(slots[i]);
+                        }
+                        synchronized(sink) {
+                            sink.runCompleted(run, values.clone(), results);
+                        }
+                    }
+                    return null;
+                } catch (RuntimeException | Error e) {
+                    failed.set(true);
+                    throw e;
+                }
+            });
+        }
+        for (Future<Void> future: executor.invokeAll(tasks)) {
+            future.get();
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package org.tastefuljava.simuli.engine;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import org.tastefuljava.simuli.model.Input;
+import org.tastefuljava.simuli.model.Output;
+import org.tastefuljava.simuli.model.Patch;
+import org.tastefuljava.simuli.model.Schema;
+
+class PatchGraph {
+    private final Patch[] patches;
+    private final Map<Patch,Integer> index = new IdentityHashMap<>();
+    private final int[] succStart;
+    private final int[] succ;
+
+    PatchGraph(Schema schema) {
+        int n = 0;
+        for (Patch patch: schema.patches()) {
+            if (!index.containsKey(patch)) {
+                index.put(patch, n++);
+            }
+        }
+        patches = new Patch[n];
+        for (Map.Entry<Patch,Integer> e: index.entrySet()) {
+            patches[e.getValue()] = e.getKey();
+        }
+        succStart = new int[n+1];
+        for (int i = 0; i < n; ++i) {
+            for (Input in: patches[i].getInputs()) {
+                Output src = in.getSource();
+                if (src != null) {
+                    ++succStart[indexOf(src.getPatch())+1];
+                }
+            }
+        }
+        for (int i = 0; i < n; ++i) {
+            succStart[i+1] += succStart[i];
+        }
+        succ = new int[succStart[n]];
+        int[] fill = new int[n];
+        for (int i = 0; i < n; ++i) {
+            for (Input in: patches[i].getInputs()) {
+                Output src = in.getSource();
+                if (src != null) {
+                    int j = indexOf(src.getPatch());
+                    succ[succStart[j] + fill[j]++] = i;
+                }
+            }
+        }
+    }
+
+    int size() {
+        return patches.length;
+    }
+
+    Patch getPatch(int i) {
+        return patches[i];
+    }
+
+    int indexOf(Patch patch) {
+        Integer i = index.get(patch);
+        if (i == null) {
+            throw new IllegalArgumentException(
+                    "Patch not in schema: [" + patch.getTitle() + "]");
+        }
+        return i;
+    }
+
+    int successorStart(int i) {
+        return succStart[i];
+    }
+
+    int successorEnd(int i) {
+        return succStart[i+1];
+    }
+
+    int successor(int k) {
+        return succ[k];
+    }
+
+    boolean hasSelfLoop(int i) {
+        for (int k = succStart[i]; k < succStart[i+1]; ++k) {
+            if (succ[k] == i) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Tarjan's algorithm, without recursion; components are numbered in
+    // topological order of the condensed graph
+    int components(int[] comp) {
+        int n = patches.length;
+        int[] index = new int[n];
+        int[] low = new int[n];
+        int[] next = new int[n];
+        boolean[] onStack = new boolean[n];
+        int[] stack = new int[n];
+        int[] calls = new int[n];
+        int sp = 0;
+        int counter = 0;
+        int count = 0;
+        Arrays.fill(index, -1);
+        for (int root = 0; root < n; ++root) {
+            if (index[root] >= 0) {
+                continue;
+            }
+            int csp = 0;
+            index[root] = low[root] = counter++;
+            next[root] = succStart[root];
+            stack[sp++] = root;
+            onStack[root] = true;
+            calls[csp++] = root;
+            while (csp > 0) {
+                int v = calls[csp-1];
+                if (next[v] < succStart[v+1]) {
+                    int w = succ[next[v]++];
+                    if (index[w] < 0) {
+                        index[w] = low[w] = counter++;
+                        next[w] = succStart[w];
+                        stack[sp++] = w;
+                        onStack[w] = true;
+                        calls[csp++] = w;
+                    } else if (onStack[w]) {
+                        low[v] = Math.min(low[v], index[w]);
+                    }
+                } else {
+                    --csp;
+                    if (low[v] == index[v]) {
+                        int w;
+                        do {
+                            w = stack[--sp];
+                            onStack[w] = false;
+                            comp[w] = count;
+                        } while (w != v);
+                        ++count;
+                    }
+                    if (csp > 0) {
+                        int u = calls[csp-1];
+                        low[u] = Math.min(low[u], low[v]);
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < n; ++i) {
+            comp[i] = count - 1 - comp[i];
+        }
+        return count;
+    }
+
+    // Orders the members of a strongly connected component by reverse
+    // postorder of a depth-first search, so that only the edges closing a
+    // loop go backwards
+    void orderComponent(int[] comp, int[] members, int start, int end) {
+        int c = comp[members[start]];
+        int[] local = new int[end - start];
+        int[] next = new int[end - start];
+        boolean[] visited = new boolean[end - start];
+        Map<Integer,Integer> pos = new HashMap<>();
+        for (int k = start; k < end; ++k) {
+            pos.put(members[k], k - start);
+        }
+        int[] calls = new int[end - start];
+        int out = end - start;
+        for (int r = 0; r < end - start; ++r) {
+            if (visited[r]) {
+                continue;
+            }
+            int csp = 0;
+            visited[r] = true;
+            next[r] = succStart[members[start + r]];
+            calls[csp++] = r;
+            while (csp > 0) {
+                int v = calls[csp-1];
+                int i = members[start + v];
+                if (next[v] < succStart[i+1]) {
+                    int j = succ[next[v]++];
+                    if (comp[j] == c) {
+                        int w = pos.get(j);
+                        if (!visited[w]) {
+                            visited[w] = true;
+                            next[w] = succStart[j];
+                            calls[csp++] = w;
+                        }
+                    }
+                } else {
+                    --csp;
+                    local[--out] = i;
+                }
+            }
+        }
+        System.arraycopy(local, 0, members, start, end - start);
+    }
+}
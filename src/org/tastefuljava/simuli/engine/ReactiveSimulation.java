@@ -0,0 +1,166 @@
+package org.tastefuljava.simuli.engine;
+
+import org.tastefuljava.simuli.model.Input;
+import org.tastefuljava.simuli.model.Patch;
+
+public class ReactiveSimulation extends Simulation {
+    private final CompiledSchema plan;
+    private final int[] outputStart;
+    private final int[] sinkStart;
+    private final int[] sinks;
+    private final boolean[] dirty;
+    private final int[] heap;
+    private int size;
+    private final double[] previous;
+    private final int[] stateStart;
+    // the state at the beginning of the current step: a unit is always
+    // re-evaluated from there, so that its state doesn't move forward with
+    // every edit
+    private final double[] stepState;
+
+    public ReactiveSimulation(CompiledSchema plan) {
+        super(plan);
+        this.plan = plan;
+        outputStart = plan.outputStart();
+        sinkStart = plan.sinkStart();
+        sinks = plan.sinks();
+        dirty = new boolean[plan.getUnitCount()];
+        heap = new int[plan.getUnitCount()];
+        previous = new double[plan.getMaxUnitOutputCount()];
+        stateStart = plan.stateStart();
+        stepState = getState().clone();
+        invalidateAll();
+    }
+
+    public boolean isUpToDate() {
+        return size == 0;
+    }
+
+    public void invalidate(Patch patch) {
+        markDirty(plan.unitOf(plan.indexOf(patch)));
+    }
+
+    public final void invalidateAll() {
+        for (int u = 0; u < dirty.length; ++u) {
+            markDirty(u);
+        }
+    }
+
+    @Override
+    public void setInput(Input in, double value) {
+        if (Double.doubleToLongBits(getValue(in))
+                != Double.doubleToLongBits(value)) {
+            super.setInput(in, value);
+            markDirty(plan.unitOf(plan.indexOf(in)));
+        }
+    }
+
+    @Override
+    public void setParameter(Patch patch, int i, double value) {
+        if (Double.doubleToLongBits(getParameter(patch, i))
+                != Double.doubleToLongBits(value)) {
+            super.setParameter(patch, i, value);
+            invalidate(patch);
+        }
+    }
+
+    public int update() {
+        SignalBuffer signals = getSignals();
+        int count = 0;
+        while (size > 0) {
+            int u = removeFirst();
+            int start = outputStart[plan.unitStart(u)];
+            int end = outputStart[plan.unitEnd(u)];
+            for (int slot = start; slot < end; ++slot) {
+                previous[slot-start] = signals.get(slot);
+            }
+            int stStart = stateStart[plan.unitStart(u)];
+            System.arraycopy(stepState, stStart, getState(), stStart,
+                    stateStart[plan.unitEnd(u)] - stStart);
+            evaluateInPlace(u, u+1);
+            count += plan.unitEnd(u) - plan.unitStart(u);
+            for (int slot = start; slot < end; ++slot) {
+                if (Double.doubleToLongBits(signals.get(slot))
+                        != Double.doubleToLongBits(previous[slot-start])) {
+                    for (int k = sinkStart[slot]; k < sinkStart[slot+1]; ++k) {
+                        int v = plan.unitOf(sinks[k]);
+                        if (v != u) {
+                            markDirty(v);
+                        }
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    @Override
+    void saveEvents(Checkpoint checkpoint) {
+        checkpoint.setStepState(stepState.clone());
+    }
+
+    @Override
+    void restoreEvents(Checkpoint checkpoint) {
+        if (checkpoint.hasStepState()) {
+            double[] saved = checkpoint.stepState();
+            System.arraycopy(saved, 0, stepState, 0, stepState.length);
+            invalidateAll();
+        } else {
+            // the restored state is all we know: edits will start from it
+            System.arraycopy(getState(), 0, stepState, 0, stepState.length);
+            while (size > 0) {
+                dirty[heap[--size]] = false;
+            }
+        }
+    }
+
+    @Override
+    protected void evaluate() {
+        System.arraycopy(getState(), 0, stepState, 0, stepState.length);
+        super.evaluate();
+        while (size > 0) {
+            dirty[heap[--size]] = false;
+        }
+    }
+
+    private void markDirty(int u) {
+        if (!dirty[u]) {
+            dirty[u] = true;
+            int i = size++;
+            while (i > 0) {
+                int parent = (i-1) >>> 1;
+                if (heap[parent] <= u) {
+                    break;
+                }
+                heap[i] = heap[parent];
+                i = parent;
+            }
+            heap[i] = u;
+        }
+    }
+
+    private int removeFirst() {
+        int result = heap[0];
+        int last = heap[--size];
+        int i = 0;
+        while (true) {
+            int child = 2*i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child+1 < size && heap[child+1] < heap[child]) {
+                ++child;
+            }
+            if (last <= heap[child]) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        if (size > 0) {
+            heap[i] = last;
+        }
+        dirty[result] = false;
+        return result;
+    }
+}
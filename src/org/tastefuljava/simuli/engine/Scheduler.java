@@ -0,0 +1,5 @@
+package org.tastefuljava.simuli.engine;
+
+interface Scheduler {
+    public void schedule(int patch, long time);
+}
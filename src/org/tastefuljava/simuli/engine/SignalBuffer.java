@@ -0,0 +1,69 @@
+package org.tastefuljava.simuli.engine;
+
+public class SignalBuffer {
+    private final int width;
+    private final int lanes;
+    private final double[] data;
+    private int current;
+
+    SignalBuffer(int width, int lanes) {
+        this.width = width;
+        this.lanes = lanes;
+        this.data = new double[2*width*lanes];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getLaneCount() {
+        return lanes;
+    }
+
+    public double get(int slot) {
+        return get(slot, 0);
+    }
+
+    public double get(int slot, int lane) {
+        return data[(current*width + slot)*lanes + lane];
+    }
+
+    public double getPrevious(int slot) {
+        return getPrevious(slot, 0);
+    }
+
+    public double getPrevious(int slot, int lane) {
+        return data[((1-current)*width + slot)*lanes + lane];
+    }
+
+    public void copyTo(double[] dest, int offset) {
+        System.arraycopy(data, current*width*lanes, dest, offset, width*lanes);
+    }
+
+    void set(int slot, double value) {
+        for (int lane = 0; lane < lanes; ++lane) {
+            set(slot, lane, value);
+        }
+    }
+
+    void set(int slot, int lane, double value) {
+        data[slot*lanes + lane] = value;
+        data[(width + slot)*lanes + lane] = value;
+    }
+
+    int getCurrentHalf() {
+        return current;
+    }
+
+    void setCurrentHalf(int half) {
+        current = half;
+    }
+
+    void swap() {
+        current = 1 - current;
+    }
+
+    double[] data() {
+        return data;
+    }
+}
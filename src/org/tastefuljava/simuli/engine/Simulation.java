@@ -0,0 +1,277 @@
+package org.tastefuljava.simuli.engine;
+
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.tastefuljava.simuli.model.Input;
+import org.tastefuljava.simuli.model.Output;
+import org.tastefuljava.simuli.model.Patch;
+
+public class Simulation {
+    private static final Logger LOG
+            = Logger.getLogger(Simulation.class.getName());
+
+    public static final double DEFAULT_TOLERANCE = 1e-9;
+    public static final int DEFAULT_MAX_ITERATIONS = 100;
+
+    private final CompiledSchema plan;
+    private final Kernel[] kernels;
+    private final int[] outputStart;
+    private final int[] stateStart;
+    private final boolean fixedPoint;
+    private final int lanes;
+    private final BatchKernel[] batchKernels;
+    private final SignalBuffer signals;
+    private final double[] values;
+    private final double[] params;
+    private final double[] state;
+    private final Frame frame;
+    private long time;
+    private double tolerance = DEFAULT_TOLERANCE;
+    private int maxIterations = DEFAULT_MAX_ITERATIONS;
+
+    public Simulation(CompiledSchema plan) {
+        this(plan, 1);
+    }
+
+    Simulation(CompiledSchema plan, int lanes) {
+        if (lanes < 1) {
+            throw new IllegalArgumentException("Invalid lane count: " + lanes);
+        }
+        this.plan = plan;
+        this.kernels = plan.kernels();
+        this.lanes = lanes;
+        this.batchKernels = new BatchKernel[kernels.length];
+        if (lanes > 1) {
+            for (int p = 0; p < kernels.length; ++p) {
+                if (kernels[p] instanceof BatchKernel) {
+                    batchKernels[p] = (BatchKernel)kernels[p];
+                }
+            }
+        }
+        this.outputStart = plan.outputStart();
+        this.stateStart = plan.stateStart();
+        this.fixedPoint = plan.getFeedbackMode() == FeedbackMode.FIXED_POINT;
+        this.signals = new SignalBuffer(plan.getSlotCount(), lanes);
+        this.values = signals.data();
+        this.params = new double[plan.getParameterCount()*lanes];
+        double[] defaults = plan.defaultParameters();
+        for (int i = 0; i < defaults.length; ++i) {
+            Arrays.fill(params, i*lanes, (i+1)*lanes, defaults[i]);
+        }
+        this.state = new double[plan.getStateSize()*lanes];
+        this.frame = newFrame();
+        frame.target(1, 0);
+    }
+
+    public CompiledSchema getPlan() {
+        return plan;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    void setTime(long time) {
+        this.time = time;
+    }
+
+    public int getLaneCount() {
+        return lanes;
+    }
+
+    public SignalBuffer getSignals() {
+        return signals;
+    }
+
+    public Checkpoint checkpoint() {
+        Checkpoint result
+                = new Checkpoint(plan, lanes, time, signals, params, state);
+        saveEvents(result);
+        return result;
+    }
+
+    public void restore(Checkpoint checkpoint) {
+        if (!checkpoint.isCompatible(this)) {
+            throw new IllegalArgumentException(
+                    "Checkpoint does not match the simulation");
+        }
+        checkpoint.copyTo(values, params, state);
+        signals.setCurrentHalf(checkpoint.getCurrentHalf());
+        time = checkpoint.getTime();
+        restoreEvents(checkpoint);
+    }
+
+    void saveEvents(Checkpoint checkpoint) {
+    }
+
+    void restoreEvents(Checkpoint checkpoint) {
+    }
+
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    public void setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    public int getMaxIterations() {
+        return maxIterations;
+    }
+
+    public void setMaxIterations(int maxIterations) {
+        this.maxIterations = maxIterations;
+    }
+
+    public void step() {
+        int current = signals.getCurrentHalf();
+        frame.target(1 - current, current);
+        evaluate();
+        signals.swap();
+        ++time;
+    }
+
+    public void run(long steps) {
+        for (long i = 0; i < steps; ++i) {
+            step();
+        }
+    }
+
+    protected void evaluate() {
+        evaluate(frame, 0, plan.getUnitCount());
+    }
+
+    void evaluate(Frame frame, int fromUnit, int toUnit) {
+        frame.setTime(time);
+        for (int u = fromUnit; u < toUnit; ++u) {
+            int start = plan.unitStart(u);
+            if (!plan.isCyclic(u)) {
+                evaluatePatch(frame, start);
+            } else if (fixedPoint) {
+                iterate(frame, u);
+            } else {
+                evaluatePatches(frame, start, plan.unitEnd(u));
+            }
+        }
+    }
+
+    private void evaluatePatches(Frame frame, int start, int end) {
+        for (int p = start; p < end; ++p) {
+            evaluatePatch(frame, p);
+        }
+    }
+
+    void evaluatePatch(Frame frame, int p) {
+        frame.position(p);
+        if (lanes == 1) {
+            kernels[p].evaluate(frame);
+        } else if (batchKernels[p] != null) {
+            batchKernels[p].evaluate((BatchFrame)frame);
+        } else {
+            for (int lane = 0; lane < lanes; ++lane) {
+                frame.setLane(lane);
+                kernels[p].evaluate(frame);
+            }
+            frame.setLane(0);
+        }
+    }
+
+    private void iterate(Frame frame, int u) {
+        int start = plan.unitStart(u);
+        int end = plan.unitEnd(u);
+        int width = signals.getWidth();
+        int outStart = (frame.getWriteHalf()*width + outputStart[start])*lanes;
+        int outCount = (outputStart[end] - outputStart[start])*lanes;
+        int stStart = stateStart[start]*lanes;
+        int stCount = stateStart[end]*lanes - stStart;
+        double[] previous = frame.outputScratch(outCount);
+        double[] saved = frame.stateScratch(stCount);
+        System.arraycopy(state, stStart, saved, 0, stCount);
+        // later patches of the block are read before they are positioned
+        System.arraycopy(values,
+                (frame.getReadHalf()*width + outputStart[start])*lanes,
+                values, outStart, outCount);
+        for (int it = 0; it < maxIterations; ++it) {
+            if (it > 0) {
+                // kernels must see the state of the beginning of the step
+                System.arraycopy(saved, 0, state, stStart, stCount);
+            }
+            System.arraycopy(values, outStart, previous, 0, outCount);
+            evaluatePatches(frame, start, end);
+            if (converged(previous, outStart, outCount)) {
+                return;
+            }
+        }
+        LOG.log(Level.WARNING,
+                "Feedback loop did not converge at step {0}: [{1}]",
+                new Object[] {time, plan.getPatch(start).getTitle()});
+    }
+
+    private boolean converged(double[] previous, int start, int count) {
+        for (int i = 0; i < count; ++i) {
+            double v = values[start + i];
+            if (!(Math.abs(v - previous[i])
+                    <= tolerance*Math.max(1, Math.abs(v)))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    Frame getFrame() {
+        return frame;
+    }
+
+    void evaluateInPlace(int fromUnit, int toUnit) {
+        int current = signals.getCurrentHalf();
+        frame.target(current, current);
+        evaluate(frame, fromUnit, toUnit);
+    }
+
+    Frame newFrame() {
+        Frame result = lanes == 1
+                ? new Frame(plan, signals, params, state)
+                : new BatchFrame(plan, signals, params, state);
+        if (frame != null) {
+            result.target(frame.getWriteHalf(), frame.getReadHalf());
+        }
+        return result;
+    }
+
+    double[] getParameters() {
+        return params;
+    }
+
+    double[] getState() {
+        return state;
+    }
+
+    public double getValue(Output out) {
+        return signals.get(plan.outputSlot(out));
+    }
+
+    public double getValue(Input in) {
+        int slot = plan.inputSlot(in);
+        return plan.isDelayed(in)
+                ? signals.getPrevious(slot) : signals.get(slot);
+    }
+
+    public void setInput(Input in, double value) {
+        int slot = plan.inputSlot(in);
+        if (!plan.isExternalSlot(slot)) {
+            throw new IllegalArgumentException(
+                    "Input is connected: [" + in.getName() + "]");
+        }
+        signals.set(slot, value);
+    }
+
+    public double getParameter(Patch patch, int i) {
+        return params[plan.parameterIndex(patch, i)*lanes];
+    }
+
+    public void setParameter(Patch patch, int i, double value) {
+        int index = plan.parameterIndex(patch, i)*lanes;
+        Arrays.fill(params, index, index + lanes, value);
+    }
+}
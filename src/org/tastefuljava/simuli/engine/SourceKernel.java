@@ -0,0 +1,5 @@
+package org.tastefuljava.simuli.engine;
+
+public interface SourceKernel extends Kernel {
+    public void generate(KernelSource src);
+}
@@ -0,0 +1,5 @@
+package org.tastefuljava.simuli.engine;
+
+public interface SweepSink {
+    public void runCompleted(long run, double[] parameters, double[] results);
+}
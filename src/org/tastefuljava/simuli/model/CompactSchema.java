@@ -0,0 +1,401 @@
+package org.tastefuljava.simuli.model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public final class CompactSchema implements SchemaGraph {
+    private final String[] strings;
+    private final int[] titles;
+    private final int[] xs;
+    private final int[] ys;
+    private final int[] inputStart;
+    private final int[] outputStart;
+    private final int[] inputPatches;
+    private final int[] inputNames;
+    private final int[] sources;
+    private final int[] outputPatches;
+    private final int[] outputNames;
+    private final int[] sinkStart;
+    private final int[] sinks;
+
+    private CompactSchema(String[] strings, int[] titles, int[] xs, int[] ys,
+            int[] inputStart, int[] outputStart, int[] inputNames,
+            int[] sources, int[] outputNames) {
+        this.strings = strings;
+        this.titles = titles;
+        this.xs = xs;
+        this.ys = ys;
+        this.inputStart = inputStart;
+        this.outputStart = outputStart;
+        this.inputNames = inputNames;
+        this.sources = sources;
+        this.outputNames = outputNames;
+        this.inputPatches = owners(inputStart);
+        this.outputPatches = owners(outputStart);
+        this.sinkStart = new int[outputNames.length + 1];
+        for (int source: sources) {
+            if (source >= 0) {
+                ++sinkStart[source + 1];
+            }
+        }
+        for (int o = 0; o < outputNames.length; ++o) {
+            sinkStart[o + 1] += sinkStart[o];
+        }
+        this.sinks = new int[sinkStart[outputNames.length]];
+        int[] fill = Arrays.copyOf(sinkStart, outputNames.length);
+        for (int in = 0; in < sources.length; ++in) {
+            if (sources[in] >= 0) {
+                sinks[fill[sources[in]]++] = in;
+            }
+        }
+    }
+
+    public static CompactSchema from(Schema schema) {
+        StringTable table = new StringTable();
+        int patchCount = 0;
+        int inputCount = 0;
+        int outputCount = 0;
+        for (Patch patch: schema.patches()) {
+            if (patch instanceof CompositePatch) {
+                throw new IllegalArgumentException(
+                        "Composite patches must be expanded first");
+            }
+            ++patchCount;
+            inputCount += patch.getInputCount();
+            outputCount += patch.getOutputCount();
+        }
+        int[] titles = new int[patchCount];
+        int[] xs = new int[patchCount];
+        int[] ys = new int[patchCount];
+        int[] inputStart = new int[patchCount + 1];
+        int[] outputStart = new int[patchCount + 1];
+        int[] inputNames = new int[inputCount];
+        int[] outputNames = new int[outputCount];
+        int p = 0;
+        for (Patch patch: schema.patches()) {
+            titles[p] = table.add(patch.getTitle());
+            xs[p] = patch.getX();
+            ys[p] = patch.getY();
+            int in = inputStart[p];
+            for (Input input: patch.getInputs()) {
+                inputNames[in++] = table.add(input.getName());
+            }
+            int out = outputStart[p];
+            for (Output output: patch.getOutputs()) {
+                outputNames[out++] = table.add(output.getName());
+            }
+            inputStart[++p] = in;
+            outputStart[p] = out;
+        }
+        int[] sources = new int[inputCount];
+        p = 0;
+        for (Patch patch: schema.patches()) {
+            for (int i = 0; i < patch.getInputCount(); ++i) {
+                Output source = patch.getInput(i).getSource();
+                sources[inputStart[p] + i] = source == null
+                        || source.getPatch().schema != schema ? -1
+                        : outputStart[source.getPatch().order]
+                                + source.getIndex();
+            }
+            ++p;
+        }
+        return new CompactSchema(table.toArray(), titles, xs, ys, inputStart,
+                outputStart, inputNames, sources, outputNames);
+    }
+
+    public Schema toSchema() {
+        Schema schema = new Schema();
+        Output[] outputs = new Output[outputNames.length];
+        Patch[] patches = new Patch[titles.length];
+        for (int p = 0; p < titles.length; ++p) {
+            Patch patch = new Patch();
+            patch.setTitle(getTitle(p));
+            patch.setPosition(xs[p], ys[p]);
+            for (int in = inputStart[p]; in < inputStart[p+1]; ++in) {
+                patch.newInput(getInputName(in));
+            }
+            for (int out = outputStart[p]; out < outputStart[p+1]; ++out) {
+                outputs[out] = patch.newOutput(getOutputName(out));
+            }
+            patches[p] = patch;
+        }
+        try (Schema.Batch batch = schema.batch()) {
+            for (int p = 0; p < titles.length; ++p) {
+                Patch patch = patches[p];
+                for (int i = 0; i < patch.getInputCount(); ++i) {
+                    int source = sources[inputStart[p] + i];
+                    if (source >= 0) {
+                        patch.getInput(i).setSource(outputs[source]);
+                    }
+                }
+                schema.addPatch(patch);
+            }
+        }
+        return schema;
+    }
+
+    @Override
+    public int getPatchCount() {
+        return titles.length;
+    }
+
+    @Override
+    public String getTitle(int patch) {
+        return string(titles[patch]);
+    }
+
+    @Override
+    public int getX(int patch) {
+        return xs[patch];
+    }
+
+    @Override
+    public int getY(int patch) {
+        return ys[patch];
+    }
+
+    @Override
+    public int getInputCount(int patch) {
+        return inputStart[patch+1] - inputStart[patch];
+    }
+
+    // pins are numbered globally across all the patches
+    public int inputIndex(int patch, int i) {
+        if (i < 0 || i >= getInputCount(patch)) {
+            throw new IndexOutOfBoundsException("Invalid input index: " + i);
+        }
+        return inputStart[patch] + i;
+    }
+
+    @Override
+    public String getInputName(int patch, int i) {
+        return getInputName(inputIndex(patch, i));
+    }
+
+    @Override
+    public int getSourcePatch(int patch, int i) {
+        int source = sources[inputIndex(patch, i)];
+        return source < 0 ? -1 : outputPatches[source];
+    }
+
+    @Override
+    public int getSourceOutput(int patch, int i) {
+        int source = sources[inputIndex(patch, i)];
+        return source < 0 ? -1 : getOutputPosition(source);
+    }
+
+    @Override
+    public int getOutputCount(int patch) {
+        return outputStart[patch+1] - outputStart[patch];
+    }
+
+    public int outputIndex(int patch, int i) {
+        if (i < 0 || i >= getOutputCount(patch)) {
+            throw new IndexOutOfBoundsException("Invalid output index: " + i);
+        }
+        return outputStart[patch] + i;
+    }
+
+    @Override
+    public String getOutputName(int patch, int i) {
+        return getOutputName(outputIndex(patch, i));
+    }
+
+    @Override
+    public int getSinkCount(int patch, int i) {
+        return getSinkCount(outputIndex(patch, i));
+    }
+
+    @Override
+    public int getSinkPatch(int patch, int i, int k) {
+        return inputPatches[getSink(outputIndex(patch, i), k)];
+    }
+
+    @Override
+    public int getSinkInput(int patch, int i, int k) {
+        return getInputPosition(getSink(outputIndex(patch, i), k));
+    }
+
+    public int getTotalInputCount() {
+        return inputNames.length;
+    }
+
+    public int getTotalOutputCount() {
+        return outputNames.length;
+    }
+
+    public String getInputName(int in) {
+        return string(inputNames[in]);
+    }
+
+    public int getInputPatch(int in) {
+        return inputPatches[in];
+    }
+
+    // position of the input in its patch
+    public int getInputPosition(int in) {
+        return in - inputStart[inputPatches[in]];
+    }
+
+    public boolean isInputConnected(int in) {
+        return sources[in] >= 0;
+    }
+
+    // global index of the source output, or -1
+    public int getSource(int in) {
+        return sources[in];
+    }
+
+    public String getOutputName(int out) {
+        return string(outputNames[out]);
+    }
+
+    public int getOutputPatch(int out) {
+        return outputPatches[out];
+    }
+
+    public int getOutputPosition(int out) {
+        return out - outputStart[outputPatches[out]];
+    }
+
+    public boolean isOutputConnected(int out) {
+        return sinkStart[out] < sinkStart[out+1];
+    }
+
+    public int getSinkCount(int out) {
+        return sinkStart[out+1] - sinkStart[out];
+    }
+
+    public int getSink(int out, int k) {
+        if (k < 0 || k >= getSinkCount(out)) {
+            throw new IndexOutOfBoundsException("Invalid sink index: " + k);
+        }
+        return sinks[sinkStart[out] + k];
+    }
+
+    private String string(int index) {
+        return index < 0 ? null : strings[index];
+    }
+
+    private static int[] owners(int[] start) {
+        int[] result = new int[start[start.length-1]];
+        for (int p = 0; p < start.length-1; ++p) {
+            Arrays.fill(result, start[p], start[p+1], p);
+        }
+        return result;
+    }
+
+    // builds a compact schema patch by patch, without the object model; the
+    // pins are added to the last patch, and numbered globally
+    public static class Builder {
+        private final StringTable table = new StringTable();
+        private int patchCount;
+        private int[] titles = new int[16];
+        private int[] xs = new int[16];
+        private int[] ys = new int[16];
+        private int[] inputStart = new int[17];
+        private int[] outputStart = new int[17];
+        private int inputCount;
+        private int outputCount;
+        private int[] inputNames = new int[16];
+        private int[] sources = new int[16];
+        private int[] outputNames = new int[16];
+
+        public int addPatch(String title, int x, int y) {
+            if (patchCount == titles.length) {
+                int capacity = 2*patchCount;
+                titles = Arrays.copyOf(titles, capacity);
+                xs = Arrays.copyOf(xs, capacity);
+                ys = Arrays.copyOf(ys, capacity);
+                inputStart = Arrays.copyOf(inputStart, capacity + 1);
+                outputStart = Arrays.copyOf(outputStart, capacity + 1);
+            }
+            titles[patchCount] = table.add(title);
+            xs[patchCount] = x;
+            ys[patchCount] = y;
+            ++patchCount;
+            inputStart[patchCount] = inputCount;
+            outputStart[patchCount] = outputCount;
+            return patchCount - 1;
+        }
+
+        public int addInput(String name) {
+            checkPatch();
+            if (inputCount == inputNames.length) {
+                inputNames = Arrays.copyOf(inputNames, 2*inputCount);
+                sources = Arrays.copyOf(sources, 2*inputCount);
+            }
+            inputNames[inputCount] = table.add(name);
+            sources[inputCount] = -1;
+            inputStart[patchCount] = ++inputCount;
+            return inputCount - 1;
+        }
+
+        public int addOutput(String name) {
+            checkPatch();
+            if (outputCount == outputNames.length) {
+                outputNames = Arrays.copyOf(outputNames, 2*outputCount);
+            }
+            outputNames[outputCount] = table.add(name);
+            outputStart[patchCount] = ++outputCount;
+            return outputCount - 1;
+        }
+
+        public void connect(int out, int in) {
+            if (out < 0 || out >= outputCount) {
+                throw new IndexOutOfBoundsException(
+                        "Invalid output index: " + out);
+            }
+            if (in < 0 || in >= inputCount) {
+                throw new IndexOutOfBoundsException(
+                        "Invalid input index: " + in);
+            }
+            sources[in] = out;
+        }
+
+        public CompactSchema build() {
+            return new CompactSchema(table.toArray(),
+                    Arrays.copyOf(titles, patchCount),
+                    Arrays.copyOf(xs, patchCount),
+                    Arrays.copyOf(ys, patchCount),
+                    Arrays.copyOf(inputStart, patchCount + 1),
+                    Arrays.copyOf(outputStart, patchCount + 1),
+                    Arrays.copyOf(inputNames, inputCount),
+                    Arrays.copyOf(sources, inputCount),
+                    Arrays.copyOf(outputNames, outputCount));
+        }
+
+        private void checkPatch() {
+            if (patchCount == 0) {
+                throw new IllegalStateException("No patch to add a pin to");
+            }
+        }
+    }
+
+    private static class StringTable {
+        private final Map<String,Integer> index = new HashMap<>();
+        private String[] strings = new String[16];
+        private int size;
+
+        int add(String s) {
+            if (s == null) {
+                return -1;
+            }
+            Integer i = index.get(s);
+            if (i == null) {
+                if (size == strings.length) {
+                    strings = Arrays.copyOf(strings, 2*size);
+                }
+                i = size;
+                strings[size++] = s;
+                index.put(s, i);
+            }
+            return i;
+        }
+
+        String[] toArray() {
+            return Arrays.copyOf(strings, size);
+        }
+    }
+}
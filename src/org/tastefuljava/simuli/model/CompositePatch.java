@@ -0,0 +1,30 @@
+package org.tastefuljava.simuli.model;
+
+public class CompositePatch extends Patch {
+    private final SubSchema definition;
+
+    public CompositePatch(SubSchema definition) {
+        this.definition = definition;
+        setTitle(definition.getName());
+        for (Input in: definition.getInputs()) {
+            newInput(in.getName());
+        }
+        for (Output out: definition.getOutputs()) {
+            newOutput(out.getName());
+        }
+    }
+
+    CompositePatch(CompositePatch other) {
+        super(other);
+        this.definition = other.definition;
+    }
+
+    @Override
+    Patch copy() {
+        return new CompositePatch(this);
+    }
+
+    public SubSchema getDefinition() {
+        return definition;
+    }
+}
@@ -0,0 +1,112 @@
+package org.tastefuljava.simuli.model;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// a flat copy of a schema, where each composite patch is replaced by a copy
+// of its body
+public class Expansion {
+    private final Schema schema = new Schema();
+    private final Map<Patch,Patch> patches = new IdentityHashMap<>();
+    private final Map<Pin,Pin> pins = new IdentityHashMap<>();
+    private final List<SubSchema> stack = new ArrayList<>();
+
+    private Expansion(Schema source) {
+        try (Schema.Batch batch = schema.batch()) {
+            expand(source, pins, true);
+        }
+    }
+
+    public static boolean isNeeded(Schema schema) {
+        for (Patch patch: schema.patches()) {
+            if (patch instanceof CompositePatch) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static Expansion of(Schema schema) {
+        return new Expansion(schema);
+    }
+
+    public Schema getSchema() {
+        return schema;
+    }
+
+    // the copy of a patch of the source schema, null for composite patches
+    public Patch map(Patch patch) {
+        return patches.get(patch);
+    }
+
+    // the pin that carries the signal of a pin of the source schema; for a
+    // composite patch, the exported pin in the copy of its body
+    public Input map(Input in) {
+        return (Input)pins.get(in);
+    }
+
+    public Output map(Output out) {
+        return (Output)pins.get(out);
+    }
+
+    private void expand(Schema source, Map<Pin,Pin> local, boolean top) {
+        for (Patch patch: source.patches()) {
+            if (patch instanceof CompositePatch) {
+                instantiate((CompositePatch)patch, local);
+            } else {
+                Patch copy = new Patch(patch);
+                schema.addPatch(copy);
+                for (int i = 0; i < patch.getInputCount(); ++i) {
+                    local.put(patch.getInput(i), copy.getInput(i));
+                }
+                for (int i = 0; i < patch.getOutputCount(); ++i) {
+                    local.put(patch.getOutput(i), copy.getOutput(i));
+                }
+                if (top) {
+                    patches.put(patch, copy);
+                }
+            }
+        }
+        for (Patch patch: source.patches()) {
+            for (Input in: patch.getInputs()) {
+                Output out = in.getSource();
+                if (out != null && out.getPatch().schema == source) {
+                    Input target = (Input)local.get(in);
+                    Output from = (Output)local.get(out);
+                    if (target != null && from != null) {
+                        target.setSource(from);
+                    }
+                }
+            }
+        }
+    }
+
+    private void instantiate(CompositePatch patch, Map<Pin,Pin> local) {
+        SubSchema def = patch.getDefinition();
+        if (stack.contains(def)) {
+            throw new IllegalArgumentException(
+                    "Recursive sub-schema: [" + def.getName() + "]");
+        }
+        stack.add(def);
+        Map<Pin,Pin> inner = new IdentityHashMap<>();
+        expand(def.getBody(), inner, false);
+        int inputCount = Math.min(patch.getInputCount(), def.getInputCount());
+        for (int i = 0; i < inputCount; ++i) {
+            Input in = (Input)inner.get(def.getInput(i));
+            // a link inside the body would silently be replaced
+            if (in != null && in.isConnected()) {
+                throw new IllegalArgumentException("Exported input is"
+                        + " connected: [" + def.getInput(i).getName() + "]");
+            }
+            local.put(patch.getInput(i), in);
+        }
+        int outputCount
+                = Math.min(patch.getOutputCount(), def.getOutputCount());
+        for (int i = 0; i < outputCount; ++i) {
+            local.put(patch.getOutput(i), inner.get(def.getOutput(i)));
+        }
+        stack.remove(stack.size() - 1);
+    }
+}
@@ -2,6 +2,7 @@ package org.tastefuljava.simuli.model;
 
 public class Input extends Pin {
     private Output source;
+    int sinkIndex = -1;
 
     @Deprecated // for persistence only
     public Input() {
@@ -27,6 +28,9 @@ public class Input extends Pin {
     }
 
     public void setSource(Output newSource) {
+        if (newSource == source) {
+            return;
+        }
         if (source != null) {
             source.removeSink(this);
         }
@@ -34,6 +38,10 @@ public class Input extends Pin {
         if (source != null) {
             source.addSink(this);
         }
+        if (patch != null && patch.schema != null) {
+            patch.schema.linkChanged(this);
+            patch.fire(SchemaChange::linkChanged, this);
+        }
     }
 
     @Override
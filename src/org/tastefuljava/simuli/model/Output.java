@@ -1,10 +1,15 @@
 package org.tastefuljava.simuli.model;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 public class Output extends Pin {
-    private final Set<Input> sinks = new HashSet<>();
+    private static final Input[] NO_SINKS = {};
+
+    // in insertion order, until a removal moves the last sink in the hole
+    private Input[] sinks = NO_SINKS;
+    private int sinkCount;
 
     @Deprecated // for persistence only
     public Output() {
@@ -17,7 +22,7 @@ public class Output extends Pin {
 
     @Override
     public boolean isConnected() {
-        return !sinks.isEmpty();
+        return sinkCount > 0;
     }
 
     @Override
@@ -26,29 +31,66 @@ public class Output extends Pin {
     }
 
     public int getSinkCount() {
-        return sinks.size();
+        return sinkCount;
+    }
+
+    public Input getSink(int i) {
+        if (i < 0 || i >= sinkCount) {
+            throw new IndexOutOfBoundsException("Invalid sink index: " + i);
+        }
+        return sinks[i];
     }
 
     public Iterable<Input> getSinks() {
-        return sinks;
+        return () -> new Iterator<Input>() {
+            private int i;
+
+            @Override
+            public boolean hasNext() {
+                return i < sinkCount;
+            }
+
+            @Override
+            public Input next() {
+                if (i >= sinkCount) {
+                    throw new NoSuchElementException();
+                }
+                return sinks[i++];
+            }
+        };
     }
 
     boolean addSink(Input sink) {
         assert sink.getSource() == this;
-        return sinks.add(sink);
+        if (sink.sinkIndex >= 0) {
+            return false;
+        }
+        if (sinkCount == sinks.length) {
+            sinks = Arrays.copyOf(sinks, Math.max(2, 2*sinkCount));
+        }
+        sink.sinkIndex = sinkCount;
+        sinks[sinkCount++] = sink;
+        return true;
     }
 
     boolean removeSink(Input sink) {
         assert sink.getSource() == this;
-        return sinks.remove(sink);
+        int i = sink.sinkIndex;
+        if (i < 0) {
+            return false;
+        }
+        Input last = sinks[--sinkCount];
+        sinks[i] = last;
+        last.sinkIndex = i;
+        sinks[sinkCount] = null;
+        sink.sinkIndex = -1;
+        return true;
     }
 
     @Override
     protected void detach() {
-        final Input[] array = sinks.toArray(new Input[sinks.size()]);
-        for (Input sink: array) {
-            sink.detach();
+        while (sinkCount > 0) {
+            sinks[sinkCount-1].detach();
         }
-        assert sinks.isEmpty();
     }
 }
@@ -3,11 +3,18 @@ package org.tastefuljava.simuli.model;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.BiConsumer;
 
 public class Patch implements Serializable {
     private String title;
     private int x;
     private int y;
+    private int width = -1;
+    private int height = -1;
+    private transient int layoutVersion;
+    transient Schema schema;
+    transient int order;
+    transient boolean touched;
     private final List<Input> inputs = new ArrayList<>();
     private final List<Output> outputs = new ArrayList<>();
 
@@ -28,6 +35,16 @@ public class Patch implements Serializable {
         for (Output out: other.getOutputs()) {
             newOutput(out.getName());
         }
+        width = other.width;
+        height = other.height;
+    }
+
+    Patch copy() {
+        return new Patch(this);
+    }
+
+    public Schema getSchema() {
+        return schema;
     }
 
     public String getTitle() {
@@ -36,6 +53,8 @@ public class Patch implements Serializable {
 
     public void setTitle(String title) {
         this.title = title;
+        resetSize();
+        fire(SchemaChange::patchChanged, this);
     }
 
     public int getX() {
@@ -43,7 +62,10 @@ public class Patch implements Serializable {
     }
 
     public void setX(int x) {
+        changing();
         this.x = x;
+        changed();
+        fire(SchemaChange::patchMoved, this);
     }
 
     public int getY() {
@@ -51,12 +73,70 @@ public class Patch implements Serializable {
     }
 
     public void setY(int y) {
+        changing();
         this.y = y;
+        changed();
+        fire(SchemaChange::patchMoved, this);
     }
 
     public void setPosition(int x, int y) {
+        changing();
         this.x = x;
         this.y = y;
+        changed();
+        fire(SchemaChange::patchMoved, this);
+    }
+
+    public boolean isSized() {
+        return width >= 0;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    // the size is computed by the renderer, and reset when the title or the
+    // pins change
+    public void setSize(int width, int height) {
+        if (width != this.width || height != this.height) {
+            changing();
+            this.width = width;
+            this.height = height;
+            changed();
+        }
+    }
+
+    // changes whenever the title or the pins change
+    public int getLayoutVersion() {
+        return layoutVersion;
+    }
+
+    void resetSize() {
+        ++layoutVersion;
+        setSize(-1, -1);
+    }
+
+    private void changing() {
+        if (schema != null) {
+            schema.patchChanging(this);
+        }
+    }
+
+    private void changed() {
+        if (schema != null) {
+            schema.patchChanged(this);
+        }
+    }
+
+    <T> void fire(BiConsumer<SchemaChange,T> event, T arg) {
+        if (schema != null) {
+            schema.touch(this);
+            schema.fire(event, arg);
+        }
     }
 
     public int getInputCount() {
@@ -68,7 +148,8 @@ public class Patch implements Serializable {
     }
 
     public int inputIndexOf(Input in) {
-        return inputs.indexOf(in);
+        int i = in.index;
+        return i >= 0 && i < inputs.size() && inputs.get(i) == in ? i : -1;
     }
 
     public Iterable<Input> getInputs() {
@@ -77,23 +158,29 @@ public class Patch implements Serializable {
 
     public Input newInput(String name) {
         Input input = new Input(this, name);
+        input.index = inputs.size();
         inputs.add(input);
+        resetSize();
+        fire(SchemaChange::pinAdded, input);
         return input;
     }
 
     public void removeInput(int i) {
         Input in = inputs.remove(i);
-        if (in != null) {
-            in.detach();
-        }
+        renumber(inputs, i);
+        in.index = -1;
+        in.detach();
+        resetSize();
+        fire(SchemaChange::pinRemoved, in);
     }
 
     public boolean removeInput(Input in) {
-        boolean done = inputs.remove(in);
-        if (done) {
-            in.detach();
+        int i = inputIndexOf(in);
+        if (i < 0) {
+            return false;
         }
-        return done;
+        removeInput(i);
+        return true;
     }
 
     public int getOutputCount() {
@@ -104,8 +191,9 @@ public class Patch implements Serializable {
         return outputs.get(i);
     }
 
-    public int outputIndexOf(Output in) {
-        return outputs.indexOf(in);
+    public int outputIndexOf(Output out) {
+        int i = out.index;
+        return i >= 0 && i < outputs.size() && outputs.get(i) == out ? i : -1;
     }
 
     public Iterable<Output> getOutputs() {
@@ -114,22 +202,44 @@ public class Patch implements Serializable {
 
     public Output newOutput(String name) {
         Output input = new Output(this, name);
+        input.index = outputs.size();
         outputs.add(input);
+        resetSize();
+        fire(SchemaChange::pinAdded, input);
         return input;
     }
 
     public void removeOutput(int i) {
-        Output in = outputs.remove(i);
-        if (in != null) {
-            in.detach();
+        Output out = outputs.remove(i);
+        renumber(outputs, i);
+        if (schema != null) {
+            // the links from the following outputs changed their index
+            for (int k = i; k < outputs.size(); ++k) {
+                for (Input in: outputs.get(k).getSinks()) {
+                    if (in.getPatch().schema == schema) {
+                        schema.touch(in.getPatch());
+                    }
+                }
+            }
+        }
+        out.index = -1;
+        out.detach();
+        resetSize();
+        fire(SchemaChange::pinRemoved, out);
+    }
+
+    public boolean removeOutput(Output out) {
+        int i = outputIndexOf(out);
+        if (i < 0) {
+            return false;
         }
+        removeOutput(i);
+        return true;
     }
 
-    public boolean removeOutput(Output in) {
-        boolean done = outputs.remove(in);
-        if (done) {
-            in.detach();
+    private static void renumber(List<? extends Pin> pins, int from) {
+        for (int i = from; i < pins.size(); ++i) {
+            pins.get(i).index = i;
         }
-        return done;
     }
 }
@@ -0,0 +1,82 @@
+package org.tastefuljava.simuli.model;
+
+public final class PatchSnapshot {
+    private final String title;
+    private final int x;
+    private final int y;
+    private final String[] inputNames;
+    private final String[] outputNames;
+    private final int[] sourcePatches;
+    private final int[] sourceOutputs;
+    private final SubSchema definition;
+
+    PatchSnapshot(Patch patch) {
+        title = patch.getTitle();
+        definition = patch instanceof CompositePatch
+                ? ((CompositePatch)patch).getDefinition() : null;
+        x = patch.getX();
+        y = patch.getY();
+        int inputCount = patch.getInputCount();
+        inputNames = new String[inputCount];
+        sourcePatches = new int[inputCount];
+        sourceOutputs = new int[inputCount];
+        for (int i = 0; i < inputCount; ++i) {
+            Input in = patch.getInput(i);
+            inputNames[i] = in.getName();
+            Output out = in.getSource();
+            if (out == null || out.getPatch().schema != patch.schema) {
+                sourcePatches[i] = -1;
+                sourceOutputs[i] = -1;
+            } else {
+                sourcePatches[i] = out.getPatch().order;
+                sourceOutputs[i] = out.getIndex();
+            }
+        }
+        outputNames = new String[patch.getOutputCount()];
+        for (int i = 0; i < outputNames.length; ++i) {
+            outputNames[i] = patch.getOutput(i).getName();
+        }
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    // the definition of a composite patch, or null
+    public SubSchema getDefinition() {
+        return definition;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getInputCount() {
+        return inputNames.length;
+    }
+
+    public String getInputName(int i) {
+        return inputNames[i];
+    }
+
+    // index of the source patch in the snapshot, or -1 if not connected
+    public int getSourcePatch(int i) {
+        return sourcePatches[i];
+    }
+
+    public int getSourceOutput(int i) {
+        return sourceOutputs[i];
+    }
+
+    public int getOutputCount() {
+        return outputNames.length;
+    }
+
+    public String getOutputName(int i) {
+        return outputNames[i];
+    }
+}
@@ -5,6 +5,7 @@ import java.io.Serializable;
 public abstract class Pin implements Serializable {
     protected final Patch patch;
     protected String name;
+    int index = -1;
 
     protected Pin(Patch patch, String name) {
         this.patch = patch;
@@ -25,5 +26,9 @@ public abstract class Pin implements Serializable {
 
     public void setName(String name) {
         this.name = name;
+        if (patch != null) {
+            patch.resetSize();
+            patch.fire(SchemaChange::pinRenamed, this);
+        }
     }
 }
@@ -1,13 +1,41 @@
 package org.tastefuljava.simuli.model;
 
 import java.awt.Point;
-import java.util.Deque;
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.Map;
+import java.awt.Rectangle;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import org.tastefuljava.simuli.util.ListenerList;
 
-public class Schema {
-    private final Deque<Patch> patches = new LinkedList<>();
+public class Schema implements SchemaGraph {
+    private static final Comparator<Patch> Z_ORDER
+            = (a, b) -> Integer.compare(a.order, b.order);
+
+    private final List<Patch> patches = new ArrayList<>();
+    private final SpatialGrid<Patch> patchGrid = new SpatialGrid<>();
+    private final SpatialGrid<Input> linkGrid = new SpatialGrid<>();
+    private final Set<Patch> unsized
+            = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Rectangle bounds = new Rectangle();
+    private boolean boundsValid = true;
+    private final ListenerList listeners = new ListenerList();
+    private final SchemaListener notifier
+            = listeners.getNotifier(SchemaListener.class);
+    private int batchDepth;
+    private SchemaChange pending;
+    private int[] touched = new int[16];
+    private int touchedCount;
+    private SchemaSnapshot snapshot;
+    private volatile SchemaSnapshot published;
 
     public Schema() {
     }
@@ -17,28 +45,75 @@ public class Schema {
     }
 
     private void assign(Schema other) {
-        Map<Input,Input> inputs = new HashMap<>();
-        Map<Output,Output> outputs = new HashMap<>();
-        for (Patch otherPatch: other.patches()) {
-            Patch patch = new Patch(otherPatch);
-            assert patch.getInputCount() == otherPatch.getOutputCount()
-                    && patch.getOutputCount() == otherPatch.getOutputCount();
-            addPatch(patch);
-            for (int i = 0; i < patch.getInputCount(); ++i) {
-                inputs.put(otherPatch.getInput(i), patch.getInput(i));
+        addCopies(other.patches.toArray(new Patch[other.patches.size()]),
+                0, 0);
+    }
+
+    // copies the patches and the links between them, shifted by (dx,dy); the
+    // copies are stacked in z-order, but returned in the order of the
+    // selection
+    public List<Patch> addCopies(Collection<Patch> selection, int dx, int dy) {
+        Patch[] selected = selection.toArray(new Patch[selection.size()]);
+        if (selected.length == 0) {
+            return Collections.emptyList();
+        }
+        Schema owner = selected[0].schema;
+        for (Patch patch: selected) {
+            if (patch.schema == null || patch.schema != owner) {
+                throw new IllegalArgumentException(
+                        "Patches must belong to the same schema");
             }
-            for (int i = 0; i < patch.getOutputCount(); ++i) {
-                outputs.put(otherPatch.getOutput(i), patch.getOutput(i));
+        }
+        Patch[] sources = selected.clone();
+        Arrays.sort(sources, Z_ORDER);
+        int count = 0;
+        for (Patch patch: sources) {
+            if (count == 0 || sources[count-1] != patch) {
+                sources[count++] = patch;
             }
         }
-        for (Map.Entry<Input,Input> e: inputs.entrySet()) {
-            Input otherIn = e.getKey();
-            Input in = e.getValue();
-            Output otherOut = otherIn.getSource();
-            if (otherOut != null) {
-                in.setSource(outputs.get(otherOut));
+        int[] orders = new int[count];
+        for (int i = 0; i < count; ++i) {
+            orders[i] = sources[i].order;
+        }
+        List<Patch> copies = addCopies(Arrays.copyOf(sources, count), dx, dy);
+        Patch[] result = new Patch[selected.length];
+        for (int i = 0; i < selected.length; ++i) {
+            result[i] = copies.get(Arrays.binarySearch(orders,
+                    selected[i].order));
+        }
+        return Arrays.asList(result);
+    }
+
+    // sources must be sorted by order and belong to the same schema
+    private List<Patch> addCopies(Patch[] sources, int dx, int dy) {
+        int[] orders = new int[sources.length];
+        Patch[] copies = new Patch[sources.length];
+        try (Batch batch = batch()) {
+            for (int i = 0; i < sources.length; ++i) {
+                Patch source = sources[i];
+                orders[i] = source.order;
+                Patch copy = source.copy();
+                copy.setPosition(source.getX() + dx, source.getY() + dy);
+                addPatch(copy);
+                copies[i] = copy;
+            }
+            for (int i = 0; i < sources.length; ++i) {
+                Patch source = sources[i];
+                for (int j = 0; j < source.getInputCount(); ++j) {
+                    Output out = source.getInput(j).getSource();
+                    if (out != null && out.getPatch().schema == source.schema) {
+                        int k = Arrays.binarySearch(orders,
+                                out.getPatch().order);
+                        if (k >= 0) {
+                            copies[i].getInput(j).setSource(
+                                    copies[k].getOutput(out.getIndex()));
+                        }
+                    }
+                }
             }
         }
+        return Arrays.asList(copies);
     }
 
     public Iterable<Patch> patches() {
@@ -46,30 +121,323 @@ public class Schema {
     }
 
     public Iterable<Patch> descending() {
-        return () -> patches.descendingIterator();
+        return () -> new Iterator<Patch>() {
+            private final ListIterator<Patch> it
+                    = patches.listIterator(patches.size());
+
+            @Override
+            public boolean hasNext() {
+                return it.hasPrevious();
+            }
+
+            @Override
+            public Patch next() {
+                return it.previous();
+            }
+        };
+    }
+
+    @Override
+    public int getPatchCount() {
+        return patches.size();
+    }
+
+    public Patch getPatch(int i) {
+        return patches.get(i);
+    }
+
+    // index of the patch in z-order, or -1 if it's not in this schema
+    public int indexOf(Patch patch) {
+        return patch.schema == this ? patch.order : -1;
+    }
+
+    @Override
+    public String getTitle(int patch) {
+        return patches.get(patch).getTitle();
+    }
+
+    @Override
+    public int getX(int patch) {
+        return patches.get(patch).getX();
+    }
+
+    @Override
+    public int getY(int patch) {
+        return patches.get(patch).getY();
+    }
+
+    @Override
+    public int getInputCount(int patch) {
+        return patches.get(patch).getInputCount();
+    }
+
+    @Override
+    public String getInputName(int patch, int i) {
+        return patches.get(patch).getInput(i).getName();
+    }
+
+    @Override
+    public int getSourcePatch(int patch, int i) {
+        Output out = patches.get(patch).getInput(i).getSource();
+        return out == null ? -1 : indexOf(out.getPatch());
+    }
+
+    @Override
+    public int getSourceOutput(int patch, int i) {
+        Output out = patches.get(patch).getInput(i).getSource();
+        return out == null || out.getPatch().schema != this
+                ? -1 : out.getIndex();
+    }
+
+    @Override
+    public int getOutputCount(int patch) {
+        return patches.get(patch).getOutputCount();
+    }
+
+    @Override
+    public String getOutputName(int patch, int i) {
+        return patches.get(patch).getOutput(i).getName();
+    }
+
+    @Override
+    public int getSinkCount(int patch, int i) {
+        return patches.get(patch).getOutput(i).getSinkCount();
+    }
+
+    @Override
+    public int getSinkPatch(int patch, int i, int k) {
+        return indexOf(patches.get(patch).getOutput(i).getSink(k).getPatch());
+    }
+
+    @Override
+    public int getSinkInput(int patch, int i, int k) {
+        return patches.get(patch).getOutput(i).getSink(k).getIndex();
+    }
+
+    public void addSchemaListener(SchemaListener listener) {
+        listeners.addListener(listener);
+    }
+
+    public void removeSchemaListener(SchemaListener listener) {
+        listeners.removeListener(listener);
+    }
+
+    // changes made until the batch is closed are notified as a single event
+    public Batch batch() {
+        ++batchDepth;
+        return new Batch();
+    }
+
+    public class Batch implements Closeable {
+        private boolean closed;
+
+        private Batch() {
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                --batchDepth;
+                flush();
+            }
+        }
     }
 
     public Point getLeftTop() {
-        if (patches.isEmpty()) {
-            return new Point(0,0);
+        Rectangle rc = bounds();
+        return new Point(rc.x, rc.y);
+    }
+
+    // unsized patches only count by their position
+    public Rectangle getBounds() {
+        return new Rectangle(bounds());
+    }
+
+    public Iterable<Patch> unsizedPatches() {
+        return new ArrayList<>(unsized);
+    }
+
+    // patches that may intersect the rectangle, from bottom to top
+    public Iterable<Patch> patchesIn(int x, int y, int w, int h) {
+        List<Patch> result = new ArrayList<>();
+        patchGrid.query(x, y, w, h, result);
+        result.sort(Z_ORDER);
+        return result;
+    }
+
+    // patches that may contain the point, from top to bottom
+    public Iterable<Patch> patchesAt(int x, int y) {
+        List<Patch> result = new ArrayList<>();
+        patchGrid.query(x, y, 1, 1, result);
+        result.sort(Z_ORDER.reversed());
+        return result;
+    }
+
+    // connected inputs whose link may intersect the rectangle
+    public Iterable<Input> linksIn(int x, int y, int w, int h) {
+        List<Input> result = new ArrayList<>();
+        linkGrid.query(x, y, w, h, result);
+        return result;
+    }
+
+    public void addPatch(Patch patch) {
+        if (patch.schema != null) {
+            throw new IllegalArgumentException("Patch already in a schema");
+        }
+        patch.schema = this;
+        patch.order = patches.size();
+        patches.add(patch);
+        // the flag may come from an earlier schema
+        patch.touched = false;
+        touch(patch);
+        if (patches.size() == 1) {
+            bounds.setBounds(patch.getX(), patch.getY(), 0, 0);
+        }
+        patchChanged(patch);
+        fire(SchemaChange::patchAdded, patch);
+    }
+
+    // builds a new immutable version, sharing the patches that did not
+    // change; must be called from the thread that edits the schema
+    public SchemaSnapshot snapshot() {
+        if (snapshot == null) {
+            snapshot = new SchemaSnapshot(0, 0, new PatchSnapshot[0][]);
+        }
+        if (touchedCount > 0) {
+            snapshot = snapshot.update(snapshot.getVersion() + 1, patches,
+                    touched, touchedCount);
+            for (int i = 0; i < touchedCount; ++i) {
+                patches.get(touched[i]).touched = false;
+            }
+            touchedCount = 0;
+        }
+        published = snapshot;
+        return snapshot;
+    }
+
+    // the last snapshot taken, safe to read from any thread
+    public SchemaSnapshot getPublishedSnapshot() {
+        return published;
+    }
+
+    void touch(Patch patch) {
+        if (!patch.touched) {
+            patch.touched = true;
+            if (touchedCount == touched.length) {
+                touched = Arrays.copyOf(touched, 2*touchedCount);
+            }
+            touched[touchedCount++] = patch.order;
+        }
+    }
+
+    boolean hasListeners() {
+        return listeners.isNotificationRequired();
+    }
+
+    // the events are non-capturing method references: nothing is allocated
+    // when no one listens
+    <T> void fire(BiConsumer<SchemaChange,T> event, T arg) {
+        if (hasListeners()) {
+            if (pending == null) {
+                pending = new SchemaChange(this);
+            }
+            event.accept(pending, arg);
+            flush();
+        }
+    }
+
+    private void flush() {
+        if (batchDepth == 0 && pending != null) {
+            SchemaChange change = pending;
+            pending = null;
+            notifier.schemaChanged(change);
+        }
+    }
+
+    void patchChanging(Patch patch) {
+        // the bounds can only shrink if the patch is on the boundary
+        if (boundsValid) {
+            int x = patch.getX();
+            int y = patch.getY();
+            if (x == bounds.x || y == bounds.y
+                    || x + width(patch) == bounds.x + bounds.width
+                    || y + height(patch) == bounds.y + bounds.height) {
+                boundsValid = false;
+            }
+        }
+    }
+
+    void patchChanged(Patch patch) {
+        if (boundsValid) {
+            bounds.add(new Rectangle(patch.getX(), patch.getY(),
+                    width(patch), height(patch)));
+        }
+        if (patch.isSized()) {
+            unsized.remove(patch);
+            patchGrid.put(patch, patch.getX(), patch.getY(),
+                    patch.getWidth(), patch.getHeight());
         } else {
-            int left = Integer.MAX_VALUE;
-            int top = Integer.MAX_VALUE;
-            for (Patch patch: patches) {
-                int x = patch.getX();
-                int y = patch.getY();
-                if (x < left) {
-                    left = x;
+            unsized.add(patch);
+            patchGrid.putUnbounded(patch);
+        }
+        for (Input in: patch.getInputs()) {
+            linkChanged(in);
+        }
+        for (Output out: patch.getOutputs()) {
+            for (Input in: out.getSinks()) {
+                if (in.getPatch().schema == this) {
+                    linkChanged(in);
                 }
-                if (y < top) {
-                    top = y;
+            }
+        }
+    }
+
+    private Rectangle bounds() {
+        if (!boundsValid) {
+            boolean first = true;
+            for (Patch patch: patches) {
+                Rectangle rc = new Rectangle(patch.getX(), patch.getY(),
+                        width(patch), height(patch));
+                if (first) {
+                    bounds.setBounds(rc);
+                    first = false;
+                } else {
+                    bounds.add(rc);
                 }
             }
-            return new Point(left, top);
+            boundsValid = true;
         }
+        return bounds;
     }
 
-    public void addPatch(Patch patch) {
-        patches.add(patch);
+    private static int width(Patch patch) {
+        return Math.max(patch.getWidth(), 0);
+    }
+
+    private static int height(Patch patch) {
+        return Math.max(patch.getHeight(), 0);
+    }
+
+    // a link is within the union of the bounds of the two patches
+    void linkChanged(Input in) {
+        Output out = in.getSource();
+        if (out == null) {
+            linkGrid.remove(in);
+            return;
+        }
+        Patch sink = in.getPatch();
+        Patch source = out.getPatch();
+        if (!sink.isSized() || !source.isSized()) {
+            linkGrid.putUnbounded(in);
+        } else {
+            int left = Math.min(sink.getX(), source.getX());
+            int top = Math.min(sink.getY(), source.getY());
+            int right = Math.max(sink.getX() + sink.getWidth(),
+                    source.getX() + source.getWidth());
+            int bottom = Math.max(sink.getY() + sink.getHeight(),
+                    source.getY() + source.getHeight());
+            linkGrid.put(in, left, top, right - left, bottom - top);
+        }
     }
 }
@@ -0,0 +1,106 @@
+package org.tastefuljava.simuli.model;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+public class SchemaChange {
+    private final Schema schema;
+    private final Set<Patch> addedPatches = new LinkedHashSet<>();
+    private final Set<Patch> movedPatches = new LinkedHashSet<>();
+    private final Set<Patch> changedPatches = new LinkedHashSet<>();
+    private final Set<Pin> addedPins = new LinkedHashSet<>();
+    private final Set<Pin> removedPins = new LinkedHashSet<>();
+    private final Set<Pin> renamedPins = new LinkedHashSet<>();
+    private final Set<Input> changedLinks = new LinkedHashSet<>();
+
+    SchemaChange(Schema schema) {
+        this.schema = schema;
+    }
+
+    public Schema getSchema() {
+        return schema;
+    }
+
+    public boolean isEmpty() {
+        return addedPatches.isEmpty() && movedPatches.isEmpty()
+                && changedPatches.isEmpty() && changedLinks.isEmpty();
+    }
+
+    public Collection<Patch> getAddedPatches() {
+        return Collections.unmodifiableSet(addedPatches);
+    }
+
+    public Collection<Patch> getMovedPatches() {
+        return Collections.unmodifiableSet(movedPatches);
+    }
+
+    // patches whose title or pins changed, and thus their layout
+    public Collection<Patch> getChangedPatches() {
+        return Collections.unmodifiableSet(changedPatches);
+    }
+
+    public Collection<Pin> getAddedPins() {
+        return Collections.unmodifiableSet(addedPins);
+    }
+
+    public Collection<Pin> getRemovedPins() {
+        return Collections.unmodifiableSet(removedPins);
+    }
+
+    public Collection<Pin> getRenamedPins() {
+        return Collections.unmodifiableSet(renamedPins);
+    }
+
+    // the inputs whose source changed
+    public Collection<Input> getChangedLinks() {
+        return Collections.unmodifiableSet(changedLinks);
+    }
+
+    public boolean affects(Patch patch) {
+        return addedPatches.contains(patch) || movedPatches.contains(patch)
+                || changedPatches.contains(patch);
+    }
+
+    void patchAdded(Patch patch) {
+        addedPatches.add(patch);
+    }
+
+    void patchMoved(Patch patch) {
+        if (!addedPatches.contains(patch)) {
+            movedPatches.add(patch);
+        }
+    }
+
+    void patchChanged(Patch patch) {
+        if (!addedPatches.contains(patch)) {
+            changedPatches.add(patch);
+        }
+    }
+
+    void pinAdded(Pin pin) {
+        addedPins.add(pin);
+        patchChanged(pin.getPatch());
+    }
+
+    void pinRemoved(Pin pin) {
+        // a pin added and removed in the same batch leaves no trace
+        if (!addedPins.remove(pin)) {
+            removedPins.add(pin);
+        }
+        renamedPins.remove(pin);
+        patchChanged(pin.getPatch());
+    }
+
+    void pinRenamed(Pin pin) {
+        if (!addedPins.contains(pin)) {
+            renamedPins.add(pin);
+        }
+        patchChanged(pin.getPatch());
+    }
+
+    void linkChanged(Input in) {
+        changedLinks.add(in);
+    }
+}
@@ -0,0 +1,22 @@
+package org.tastefuljava.simuli.model;
+
+// read access to the patches and links of a schema, without pin or patch
+// objects: patches are numbered from 0 in z-order, and pins by their index
+// in their patch
+public interface SchemaGraph {
+    public int getPatchCount();
+    public String getTitle(int patch);
+    public int getX(int patch);
+    public int getY(int patch);
+    public int getInputCount(int patch);
+    public String getInputName(int patch, int i);
+    // the patch feeding the input, or -1 if it's not connected
+    public int getSourcePatch(int patch, int i);
+    public int getSourceOutput(int patch, int i);
+    public int getOutputCount(int patch);
+    public String getOutputName(int patch, int i);
+    public int getSinkCount(int patch, int i);
+    // the patch of the sink, or -1 if it's not in the graph
+    public int getSinkPatch(int patch, int i, int k);
+    public int getSinkInput(int patch, int i, int k);
+}
@@ -0,0 +1,5 @@
+package org.tastefuljava.simuli.model;
+
+public interface SchemaListener {
+    public void schemaChanged(SchemaChange change);
+}
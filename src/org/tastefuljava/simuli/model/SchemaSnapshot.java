@@ -0,0 +1,112 @@
+package org.tastefuljava.simuli.model;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+public final class SchemaSnapshot {
+    static final int CHUNK_SHIFT = 6;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+    private final long version;
+    private final int size;
+    // chunks that did not change are shared with the previous snapshot
+    private final PatchSnapshot[][] chunks;
+
+    SchemaSnapshot(long version, int size, PatchSnapshot[][] chunks) {
+        this.version = version;
+        this.size = size;
+        this.chunks = chunks;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public PatchSnapshot getPatch(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Invalid patch index: " + i);
+        }
+        return chunks[i >>> CHUNK_SHIFT][i & (CHUNK_SIZE-1)];
+    }
+
+    public Iterable<PatchSnapshot> patches() {
+        return () -> new Iterator<PatchSnapshot>() {
+            private int i;
+
+            @Override
+            public boolean hasNext() {
+                return i < size;
+            }
+
+            @Override
+            public PatchSnapshot next() {
+                if (i >= size) {
+                    throw new NoSuchElementException();
+                }
+                return getPatch(i++);
+            }
+        };
+    }
+
+    public Schema toSchema() {
+        Schema schema = new Schema();
+        Patch[] patches = new Patch[size];
+        for (int i = 0; i < size; ++i) {
+            PatchSnapshot ps = getPatch(i);
+            Patch patch;
+            if (ps.getDefinition() != null) {
+                patch = new CompositePatch(ps.getDefinition());
+            } else {
+                patch = new Patch();
+                for (int j = 0; j < ps.getInputCount(); ++j) {
+                    patch.newInput(ps.getInputName(j));
+                }
+                for (int j = 0; j < ps.getOutputCount(); ++j) {
+                    patch.newOutput(ps.getOutputName(j));
+                }
+            }
+            patch.setTitle(ps.getTitle());
+            patch.setPosition(ps.getX(), ps.getY());
+            patches[i] = patch;
+        }
+        for (int i = 0; i < size; ++i) {
+            PatchSnapshot ps = getPatch(i);
+            for (int j = 0; j < ps.getInputCount(); ++j) {
+                int source = ps.getSourcePatch(j);
+                if (source >= 0) {
+                    patches[i].getInput(j).setSource(
+                            patches[source].getOutput(ps.getSourceOutput(j)));
+                }
+            }
+            schema.addPatch(patches[i]);
+        }
+        return schema;
+    }
+
+    // costs one reference per chunk for the table, plus the chunks that hold
+    // the dirty patches
+    SchemaSnapshot update(long version, List<Patch> patches, int[] dirty,
+            int dirtyCount) {
+        int size = patches.size();
+        int chunkCount = (size + CHUNK_SIZE - 1) >>> CHUNK_SHIFT;
+        PatchSnapshot[][] result = Arrays.copyOf(chunks, chunkCount);
+        for (int k = 0; k < dirtyCount; ++k) {
+            int i = dirty[k];
+            int c = i >>> CHUNK_SHIFT;
+            if (result[c] == null) {
+                result[c] = new PatchSnapshot[CHUNK_SIZE];
+            } else if (c < chunks.length && result[c] == chunks[c]) {
+                // still shared with the previous snapshot
+                result[c] = result[c].clone();
+            }
+            result[c][i & (CHUNK_SIZE-1)] = new PatchSnapshot(patches.get(i));
+        }
+        return new SchemaSnapshot(version, size, result);
+    }
+}
@@ -0,0 +1,127 @@
+package org.tastefuljava.simuli.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+final class SpatialGrid<T> {
+    private static final int CELL_SHIFT = 8;
+    private static final int MAX_CELLS = 64;
+
+    private final Map<Long,List<T>> cells = new HashMap<>();
+    private final Map<T,int[]> ranges = new IdentityHashMap<>();
+    // items without bounds (null), or too large to be spread over cells
+    private final Map<T,int[]> large = new IdentityHashMap<>();
+
+    void put(T item, int x, int y, int w, int h) {
+        int cx0 = x >> CELL_SHIFT;
+        int cy0 = y >> CELL_SHIFT;
+        int cx1 = (x + Math.max(w, 1) - 1) >> CELL_SHIFT;
+        int cy1 = (y + Math.max(h, 1) - 1) >> CELL_SHIFT;
+        if ((long)(cx1 - cx0 + 1)*(cy1 - cy0 + 1) > MAX_CELLS) {
+            remove(item);
+            large.put(item, new int[] {x, y, x + w, y + h});
+            return;
+        }
+        int[] range = ranges.get(item);
+        if (range != null && range[0] == cx0 && range[1] == cy0
+                && range[2] == cx1 && range[3] == cy1) {
+            return;
+        }
+        remove(item);
+        ranges.put(item, new int[] {cx0, cy0, cx1, cy1});
+        for (int cy = cy0; cy <= cy1; ++cy) {
+            for (int cx = cx0; cx <= cx1; ++cx) {
+                List<T> list = cells.get(key(cx, cy));
+                if (list == null) {
+                    list = new ArrayList<>(4);
+                    cells.put(key(cx, cy), list);
+                }
+                list.add(item);
+            }
+        }
+    }
+
+    void putUnbounded(T item) {
+        if (!large.containsKey(item) || large.get(item) != null) {
+            remove(item);
+            large.put(item, null);
+        }
+    }
+
+    void remove(T item) {
+        if (large.containsKey(item)) {
+            large.remove(item);
+            return;
+        }
+        int[] range = ranges.remove(item);
+        if (range != null) {
+            for (int cy = range[1]; cy <= range[3]; ++cy) {
+                for (int cx = range[0]; cx <= range[2]; ++cx) {
+                    Long key = key(cx, cy);
+                    List<T> list = cells.get(key);
+                    removeIdentity(list, item);
+                    if (list.isEmpty()) {
+                        cells.remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    // adds to the result every item that may intersect the rectangle
+    void query(int x, int y, int w, int h, Collection<T> result) {
+        Set<T> found = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Map.Entry<T,int[]> e: large.entrySet()) {
+            int[] rc = e.getValue();
+            if (rc == null || rc[0] < x + w && rc[1] < y + h
+                    && rc[2] > x && rc[3] > y) {
+                found.add(e.getKey());
+            }
+        }
+        int cx0 = x >> CELL_SHIFT;
+        int cy0 = y >> CELL_SHIFT;
+        int cx1 = (x + Math.max(w, 1) - 1) >> CELL_SHIFT;
+        int cy1 = (y + Math.max(h, 1) - 1) >> CELL_SHIFT;
+        if ((long)(cx1 - cx0 + 1)*(cy1 - cy0 + 1) <= cells.size()) {
+            for (int cy = cy0; cy <= cy1; ++cy) {
+                for (int cx = cx0; cx <= cx1; ++cx) {
+                    List<T> list = cells.get(key(cx, cy));
+                    if (list != null) {
+                        found.addAll(list);
+                    }
+                }
+            }
+        } else {
+            for (Map.Entry<Long,List<T>> e: cells.entrySet()) {
+                long key = e.getKey();
+                int cx = (int)(key >> 32);
+                int cy = (int)key;
+                if (cx >= cx0 && cx <= cx1 && cy >= cy0 && cy <= cy1) {
+                    found.addAll(e.getValue());
+                }
+            }
+        }
+        result.addAll(found);
+    }
+
+    private static Long key(int cx, int cy) {
+        return ((long)cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+
+    private static <T> void removeIdentity(List<T> list, T item) {
+        for (int i = list.size(); --i >= 0; ) {
+            if (list.get(i) == item) {
+                int last = list.size() - 1;
+                list.set(i, list.get(last));
+                list.remove(last);
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package org.tastefuljava.simuli.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class SubSchema {
+    private String name;
+    private final Schema body;
+    private final List<Input> inputs = new ArrayList<>();
+    private final List<Output> outputs = new ArrayList<>();
+
+    public SubSchema(String name, Schema body) {
+        this.name = name;
+        this.body = body;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public Schema getBody() {
+        return body;
+    }
+
+    public int getInputCount() {
+        return inputs.size();
+    }
+
+    public Input getInput(int i) {
+        return inputs.get(i);
+    }
+
+    public Iterable<Input> getInputs() {
+        return inputs;
+    }
+
+    public int getOutputCount() {
+        return outputs.size();
+    }
+
+    public Output getOutput(int i) {
+        return outputs.get(i);
+    }
+
+    public Iterable<Output> getOutputs() {
+        return outputs;
+    }
+
+    // exported pins must be added before the first instance is created; an
+    // exported input must stay unconnected in the body, or the expansion
+    // fails
+    public void exportInput(Input in) {
+        checkPin(in);
+        if (in.isConnected()) {
+            throw new IllegalArgumentException(
+                    "Input is connected: [" + in.getName() + "]");
+        }
+        inputs.add(in);
+    }
+
+    public void exportOutput(Output out) {
+        checkPin(out);
+        outputs.add(out);
+    }
+
+    private void checkPin(Pin pin) {
+        if (pin.getPatch() == null || pin.getPatch().schema != body) {
+            throw new IllegalArgumentException(
+                    "Pin not in the body: [" + pin.getName() + "]");
+        }
+    }
+}
@@ -7,10 +7,10 @@ import java.awt.Rectangle;
 import org.tastefuljava.simuli.model.Input;
 import org.tastefuljava.simuli.model.Output;
 import org.tastefuljava.simuli.model.Patch;
+import org.tastefuljava.simuli.model.SchemaGraph;
+import org.tastefuljava.simuli.util.XMLWriter;
 
 public class DefaultPatchView implements PatchView {
-    private final Patch patch;
-    private final RenderContext rc;
     private final PatchStyle style;
     private final int width;
     private final int height;
@@ -21,18 +21,25 @@ public class DefaultPatchView implements PatchView {
     private final int outputWidth;
     private final int[] outputHeight;
 
-    DefaultPatchView(RenderContext rc, Patch patch, PatchStyle style) {
-        this.rc = rc;
-        this.patch = patch;
+    DefaultPatchView(RenderContext rc, SchemaGraph graph, int patch,
+            PatchStyle style) {
         this.style = style;
         int bw = style.getPadding();
         int sw = style.getGutterWidth();
-        Dimension titleSize = rc.stringSize(patch.getTitle(),
+        Dimension titleSize = rc.stringSize(graph.getTitle(patch),
                 style.getTitleFont());
-        inputHeight = new int[patch.getInputCount()];
-        inputWidth = rc.columnSize(patch.getInputs(), inputHeight);
-        outputHeight = new int[patch.getOutputCount()];
-        outputWidth = rc.columnSize(patch.getOutputs(), outputHeight);
+        String[] inputNames = new String[graph.getInputCount(patch)];
+        for (int i = 0; i < inputNames.length; ++i) {
+            inputNames[i] = graph.getInputName(patch, i);
+        }
+        inputHeight = new int[inputNames.length];
+        inputWidth = rc.columnSize(inputNames, inputHeight);
+        String[] outputNames = new String[graph.getOutputCount(patch)];
+        for (int i = 0; i < outputNames.length; ++i) {
+            outputNames[i] = graph.getOutputName(patch, i);
+        }
+        outputHeight = new int[outputNames.length];
+        outputWidth = rc.columnSize(outputNames, outputHeight);
         titleWidth = Math.max(titleSize.width, inputWidth + sw + outputWidth);
         titleHeight = titleSize.height;
         width = 2 * bw + titleWidth;
@@ -40,16 +47,6 @@ public class DefaultPatchView implements PatchView {
                 + Math.max(sum(inputHeight), sum(outputHeight));
     }
 
-    @Override
-    public int getX() {
-        return patch.getX();
-    }
-
-    @Override
-    public int getY() {
-        return patch.getY();
-    }
-
     @Override
     public int getWidth() {
         return width;
@@ -100,40 +97,91 @@ public class DefaultPatchView implements PatchView {
     }
 
     @Override
-    public void paint(Graphics2D g, int x, int y) {
+    public void paint(Graphics2D g, SchemaGraph graph, int patch, int x,
+            int y) {
         int bw = style.getPadding();
         int sw = style.getGutterWidth();
         paintBorder(g, x, y);
         x += bw;
         y += bw;
-        paintTitle(g, patch, x, y);
+        paintTitle(g, graph.getTitle(patch), x, y);
+        y += titleHeight + sw;
+        paintInputRow(g, graph, patch, x, y);
+        x += titleWidth - outputWidth;
+        paintOutputRow(g, graph, patch, x, y);
+    }
+
+    @Override
+    public void writeSvg(XMLWriter xml, SchemaGraph graph, int patch, int x,
+            int y) {
+        RenderContext rc = RenderContext.current();
+        int bw = style.getPadding();
+        int sw = style.getGutterWidth();
+        int pw = style.getPinWidth();
+        int borderRadius = style.getBorderRadius();
+        xml.start("rect");
+        xml.attribute("x", x);
+        xml.attribute("y", y);
+        xml.attribute("width", width);
+        xml.attribute("height", height);
+        xml.attribute("rx", borderRadius/2.0);
+        xml.attribute("fill", RenderContext.svgColor(style.getBackground()));
+        xml.end("rect");
+        x += bw;
+        y += bw;
+        rc.writeString(xml, graph.getTitle(patch), style.getTitleFont(), x, y,
+                titleWidth, titleHeight,
+                HorizontalAlignment.LEFT, VerticalAlignment.TOP);
         y += titleHeight + sw;
-        paintInputRow(g, patch.getInputs(), x, y);
+        int yi = y;
+        for (int i = 0; i < inputHeight.length; ++i) {
+            int h = inputHeight[i];
+            rc.writePin(xml, graph.getSourcePatch(patch, i) >= 0,
+                    x, yi + (h - pw) / 2, pw, pw);
+            rc.writeString(xml, graph.getInputName(patch, i),
+                    style.getPinNameFont(),
+                    x + pw + sw, yi, inputWidth - pw - sw, h,
+                    HorizontalAlignment.LEFT, VerticalAlignment.TOP);
+            yi += h;
+        }
         x += titleWidth - outputWidth;
-        paintOutputRow(g, patch.getOutputs(), x, y);
+        for (int i = 0; i < outputHeight.length; ++i) {
+            int h = outputHeight[i];
+            rc.writeString(xml, graph.getOutputName(patch, i),
+                    style.getPinNameFont(), x, y,
+                    outputWidth - pw - sw, h,
+                    HorizontalAlignment.RIGHT, VerticalAlignment.TOP);
+            rc.writePin(xml, graph.getSinkCount(patch, i) > 0,
+                    x + outputWidth - pw, y + (h - pw) / 2, pw, pw);
+            y += h;
+        }
     }
 
-    private void paintOutput(Graphics2D g, Output out, int x, int y,
-            int w, int h) {
+    private void paintOutput(Graphics2D g, String name, boolean connected,
+            int x, int y, int w, int h) {
+        RenderContext rc = RenderContext.current();
         int pw = style.getPinWidth();
         int sw = style.getGutterWidth();
-        rc.paintString(g, out.getName(), style.getPinNameFont(), x, y,
+        rc.paintString(g, name, style.getPinNameFont(), x, y,
                 w-pw-sw, h, HorizontalAlignment.RIGHT, VerticalAlignment.TOP);
-        rc.paintPin(g, out, x + w - pw, y + (h - pw) / 2, pw, pw);
+        rc.paintPin(g, connected, x + w - pw, y + (h - pw) / 2, pw, pw);
     }
 
-    private void paintInput(Graphics2D g, Input in, int x, int y,
-            int w, int h) {
+    private void paintInput(Graphics2D g, String name, boolean connected,
+            int x, int y, int w, int h) {
+        RenderContext rc = RenderContext.current();
         int pw = style.getPinWidth();
         int sw = style.getGutterWidth();
-        rc.paintPin(g, in, x, y + (h - pw) / 2, pw, pw);
-        rc.paintString(g, in.getName(), style.getPinNameFont(), x + pw + sw, y,
+        rc.paintPin(g, connected, x, y + (h - pw) / 2, pw, pw);
+        rc.paintString(g, name, style.getPinNameFont(), x + pw + sw, y,
                 w - pw - sw, h,
                 HorizontalAlignment.LEFT, VerticalAlignment.TOP);
     }
 
-    private void paintTitle(Graphics2D g, Patch patch, int x, int y) {
-        rc.paintString(g, patch.getTitle(), style.getTitleFont(), x, y,
+    private void paintTitle(Graphics2D g, String title, int x, int y) {
+        // views are cached across render contexts
+        RenderContext rc = RenderContext.current();
+        rc.paintString(g, title, style.getTitleFont(), x, y,
                 titleWidth, titleHeight,
                 HorizontalAlignment.LEFT, VerticalAlignment.TOP);
     }
@@ -147,12 +195,13 @@ public class DefaultPatchView implements PatchView {
     }
 
     @Override
-    public <T> T hitTest(int xt, int yt, HitTester<T> tester) {
+    public <T> T hitTest(Patch patch, int xt, int yt,
+            HitTester<T> tester) {
         int bw = style.getPadding();
         int sw = style.getGutterWidth();
         int pw = style.getPinWidth();
-        int x = getX();
-        int y = getY();
+        int x = patch.getX();
+        int y = patch.getY();
         int r = x + width;
         int b = y + height;
         if (xt < x || yt < y || xt >= r || yt >= b) {
@@ -215,22 +264,24 @@ public class DefaultPatchView implements PatchView {
         return sum;
     }
 
-    private void paintInputRow(Graphics2D g, Iterable<Input> inputs,
+    private void paintInputRow(Graphics2D g, SchemaGraph graph, int patch,
             int x, int y) {
-        int i = 0;
-        for (Input in : inputs) {
-            int h = inputHeight[i++];
-            paintInput(g, in, x, y, inputWidth, h);
+        for (int i = 0; i < inputHeight.length; ++i) {
+            int h = inputHeight[i];
+            paintInput(g, graph.getInputName(patch, i),
+                    graph.getSourcePatch(patch, i) >= 0,
+                    x, y, inputWidth, h);
             y += h;
         }
     }
 
-    private void paintOutputRow(Graphics2D g, Iterable<Output> outputs,
+    private void paintOutputRow(Graphics2D g, SchemaGraph graph, int patch,
             int x, int y) {
-        int i = 0;
-        for (Output out : outputs) {
-            int h = outputHeight[i++];
-            paintOutput(g, out, x, y, outputWidth, h);
+        for (int i = 0; i < outputHeight.length; ++i) {
+            int h = outputHeight[i];
+            paintOutput(g, graph.getOutputName(patch, i),
+                    graph.getSinkCount(patch, i) > 0,
+                    x, y, outputWidth, h);
             y += h;
         }
     }
@@ -0,0 +1,101 @@
+package org.tastefuljava.simuli.render;
+
+import java.awt.font.FontRenderContext;
+import java.util.Map;
+import java.util.Properties;
+import java.util.WeakHashMap;
+import org.tastefuljava.simuli.model.Patch;
+import org.tastefuljava.simuli.model.SchemaGraph;
+
+// the patch views built with a given style, kept across render contexts; a
+// view is rebuilt when the layout version of its patch changes. The views of
+// a graph that is not a Schema are kept by index, and such a graph must not
+// change once laid out. It can be shared by render contexts on several
+// threads.
+public class LayoutCache {
+    private final FontRenderContext frc;
+    private final PatchStyle patchStyle;
+    private final TextCache texts;
+    private final Map<Patch,Entry> entries = new WeakHashMap<>();
+    private final Map<SchemaGraph,PatchView[]> graphs = new WeakHashMap<>();
+
+    public LayoutCache(Properties props, Object aaHint, Object fmHint) {
+        this(props, aaHint, fmHint, TextCache.getDefault());
+    }
+
+    public LayoutCache(Properties props, Object aaHint, Object fmHint,
+            TextCache texts) {
+        this.frc = new FontRenderContext(null, aaHint, fmHint);
+        this.patchStyle = new PatchStyle(props);
+        this.texts = texts;
+    }
+
+    public PatchStyle getPatchStyle() {
+        return patchStyle;
+    }
+
+    public TextCache getTextCache() {
+        return texts;
+    }
+
+    public synchronized int size() {
+        int size = entries.size();
+        for (PatchView[] views: graphs.values()) {
+            for (PatchView view: views) {
+                if (view != null) {
+                    ++size;
+                }
+            }
+        }
+        return size;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        graphs.clear();
+    }
+
+    public synchronized void invalidate(Patch patch) {
+        entries.remove(patch);
+    }
+
+    public FontRenderContext getFontRenderContext() {
+        return frc;
+    }
+
+    synchronized PatchView get(Patch patch) {
+        Entry entry = entries.get(patch);
+        if (entry == null || entry.version != patch.getLayoutVersion()) {
+            return null;
+        }
+        return entry.view;
+    }
+
+    synchronized void put(Patch patch, PatchView view) {
+        entries.put(patch, new Entry(patch.getLayoutVersion(), view));
+    }
+
+    synchronized PatchView get(SchemaGraph graph, int patch) {
+        PatchView[] views = graphs.get(graph);
+        return views == null ? null : views[patch];
+    }
+
+    synchronized void put(SchemaGraph graph, int patch, PatchView view) {
+        PatchView[] views = graphs.get(graph);
+        if (views == null) {
+            views = new PatchView[graph.getPatchCount()];
+            graphs.put(graph, views);
+        }
+        views[patch] = view;
+    }
+
+    private static class Entry {
+        private final int version;
+        private final PatchView view;
+
+        private Entry(int version, PatchView view) {
+            this.version = version;
+            this.view = view;
+        }
+    }
+}
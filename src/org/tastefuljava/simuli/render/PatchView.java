@@ -2,14 +2,20 @@ package org.tastefuljava.simuli.render;
 
 import java.awt.Graphics2D;
 import java.awt.Point;
+import org.tastefuljava.simuli.model.Patch;
+import org.tastefuljava.simuli.model.SchemaGraph;
+import org.tastefuljava.simuli.util.XMLWriter;
 
+// the layout of a patch; it is cached with the patch or its graph as a weak
+// key, so it must not keep a reference to either
 public interface PatchView {
-    public int getX();
-    public int getY();
     public int getWidth();
     public int getHeight();
     public Point getInputPinPosition(int i);
     public Point getOutputPinPosition(int i);
-    public void paint(Graphics2D g, int x, int y);
-    public <T> T hitTest(int xt, int yt, HitTester<T> tester);
+    public void paint(Graphics2D g, SchemaGraph graph, int patch, int x,
+            int y);
+    public void writeSvg(XMLWriter xml, SchemaGraph graph, int patch, int x,
+            int y);
+    public <T> T hitTest(Patch patch, int xt, int yt, HitTester<T> tester);
 }
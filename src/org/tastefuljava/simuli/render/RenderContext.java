@@ -1,5 +1,6 @@
 package org.tastefuljava.simuli.render;
 
+import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Graphics2D;
@@ -11,9 +12,8 @@ import java.awt.font.TextLayout;
 import java.awt.geom.CubicCurve2D;
 import java.io.Closeable;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 import java.util.Properties;
 import java.util.logging.Logger;
 import org.tastefuljava.simuli.model.Input;
@@ -21,6 +21,9 @@ import org.tastefuljava.simuli.model.Output;
 import org.tastefuljava.simuli.model.Patch;
 import org.tastefuljava.simuli.model.Pin;
 import org.tastefuljava.simuli.model.Schema;
+import org.tastefuljava.simuli.model.SchemaGraph;
+import org.tastefuljava.simuli.util.Util;
+import org.tastefuljava.simuli.util.XMLWriter;
 
 public class RenderContext implements Closeable {
     private static final Logger LOG
@@ -29,15 +32,32 @@ public class RenderContext implements Closeable {
             = new ThreadLocal<>();
 
     private final FontRenderContext frc;
-    private final Map<Patch, PatchView> patchViews = new HashMap<>();
+    private final LayoutCache layouts;
     private final PatchStyle patchStyle;
+    private final TextCache texts;
+    private final boolean readOnly;
 
     public static RenderContext open(Properties props, Object aaHint,
             Object fmHint) {
+        return open(new LayoutCache(props, aaHint, fmHint));
+    }
+
+    public static RenderContext open(LayoutCache layouts) {
+        return open(layouts, false);
+    }
+
+    // a read-only context never writes the measured sizes back to the
+    // patches, so that it can run on a thread that doesn't own the schema;
+    // the patches must have been laid out beforehand
+    static RenderContext openReadOnly(LayoutCache layouts) {
+        return open(layouts, true);
+    }
+
+    private static RenderContext open(LayoutCache layouts, boolean readOnly) {
         if (CURRENT.get() != null) {
             throw new IllegalStateException("A RenderContext is already open");
         }
-        RenderContext rc = new RenderContext(props, aaHint, fmHint);
+        RenderContext rc = new RenderContext(layouts, readOnly);
         CURRENT.set(rc);
         return rc;
     }
@@ -50,9 +70,12 @@ public class RenderContext implements Closeable {
         return rc;
     }
 
-    private RenderContext(Properties props, Object aaHint, Object fmHint) {
-        this.frc = new FontRenderContext(null, aaHint, fmHint);
-        this.patchStyle = new PatchStyle(props);
+    private RenderContext(LayoutCache layouts, boolean readOnly) {
+        this.layouts = layouts;
+        this.readOnly = readOnly;
+        this.frc = layouts.getFontRenderContext();
+        this.patchStyle = layouts.getPatchStyle();
+        this.texts = layouts.getTextCache();
     }
 
     @Override
@@ -84,11 +107,43 @@ public class RenderContext implements Closeable {
         return pos;
     }
 
+    public Dimension patchSize(SchemaGraph graph, int patch) {
+        PatchView pm = patchView(graph, patch);
+        return new Dimension(pm.getWidth(), pm.getHeight());
+    }
+
+    public Point inputPosition(SchemaGraph graph, int patch, int i) {
+        Point pos = patchView(graph, patch).getInputPinPosition(i);
+        pos.translate(graph.getX(patch), graph.getY(patch));
+        return pos;
+    }
+
+    public Point outputPosition(SchemaGraph graph, int patch, int i) {
+        Point pos = patchView(graph, patch).getOutputPinPosition(i);
+        pos.translate(graph.getX(patch), graph.getY(patch));
+        return pos;
+    }
+
     public Rectangle connectionBounds(Input in) {
         Rectangle rc = new Rectangle(inputPosition(in));
         if (in.isConnected()) {
             rc.add(outputPosition(in.getSource()));
         }
+        return padPins(rc);
+    }
+
+    // bounds of the link ending at the given input
+    public Rectangle connectionBounds(SchemaGraph graph, int patch, int i) {
+        Rectangle rc = new Rectangle(inputPosition(graph, patch, i));
+        int source = graph.getSourcePatch(patch, i);
+        if (source >= 0) {
+            rc.add(outputPosition(graph, source,
+                    graph.getSourceOutput(patch, i)));
+        }
+        return padPins(rc);
+    }
+
+    private Rectangle padPins(Rectangle rc) {
         int pw = patchStyle.getPinWidth();
         int halfPw = (pw+1)/2;
         rc.x -= halfPw;
@@ -135,21 +190,103 @@ public class RenderContext implements Closeable {
         return result;
     }
 
+    public Iterable<Patch> filterPatches(Schema schema, int x, int y,
+            int w, int h) {
+        return filterPatches(schema.patchesIn(x, y, w, h), x, y, w, h);
+    }
+
+    public Iterable<Input> filterConnections(Schema schema,
+            int x, int y, int w, int h) {
+        Rectangle visible = new Rectangle(x, y, w, h);
+        List<Input> result = new ArrayList<>();
+        for (Input in: schema.linksIn(x, y, w, h)) {
+            if (in.isConnected() && connectionBounds(in).intersects(visible)) {
+                result.add(in);
+            }
+        }
+        return result;
+    }
+
+    // indices of the patches intersecting the rectangle, from bottom to top
+    public int[] patchesIn(SchemaGraph graph, int x, int y, int w, int h) {
+        if (graph instanceof Schema) {
+            Schema schema = (Schema)graph;
+            List<Patch> patches = new ArrayList<>();
+            for (Patch patch: filterPatches(schema, x, y, w, h)) {
+                patches.add(patch);
+            }
+            int[] result = new int[patches.size()];
+            for (int k = 0; k < result.length; ++k) {
+                result[k] = schema.indexOf(patches.get(k));
+            }
+            return result;
+        }
+        int right = x + w;
+        int bottom = y + h;
+        int[] result = new int[16];
+        int count = 0;
+        for (int p = 0; p < graph.getPatchCount(); ++p) {
+            int px = graph.getX(p);
+            int py = graph.getY(p);
+            if (px < right && py < bottom) {
+                Dimension dim = patchSize(graph, p);
+                if (px + dim.width > x && py + dim.height > y) {
+                    if (count == result.length) {
+                        result = Arrays.copyOf(result, 2*count);
+                    }
+                    result[count++] = p;
+                }
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    // the links intersecting the rectangle, as pairs of patch and input
+    // indices
+    public int[] linksIn(SchemaGraph graph, int x, int y, int w, int h) {
+        int[] result = new int[16];
+        int count = 0;
+        if (graph instanceof Schema) {
+            Schema schema = (Schema)graph;
+            for (Input in: filterConnections(schema, x, y, w, h)) {
+                if (count == result.length) {
+                    result = Arrays.copyOf(result, 2*count);
+                }
+                result[count++] = schema.indexOf(in.getPatch());
+                result[count++] = in.getIndex();
+            }
+            return Arrays.copyOf(result, count);
+        }
+        Rectangle visible = new Rectangle(x, y, w, h);
+        for (int p = 0; p < graph.getPatchCount(); ++p) {
+            for (int i = 0; i < graph.getInputCount(p); ++i) {
+                if (graph.getSourcePatch(p, i) >= 0
+                        && connectionBounds(graph, p, i).intersects(visible)) {
+                    if (count == result.length) {
+                        result = Arrays.copyOf(result, 2*count);
+                    }
+                    result[count++] = p;
+                    result[count++] = i;
+                }
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
     public void paint(Graphics2D g, Schema schema, int x, int y,
             int w, int h, int xt, int yt) {
         Point pt = schema.getLeftTop();
         int xs = xt-pt.x ;
         int ys = yt-pt.y;
-        paintConnections(g, filterConnections(schema.patches(), x, y, w, h),
-                xs, ys);
-        paintPatches(g, filterPatches(schema.patches(), x, y, w, h), xs, ys);
+        paintConnections(g, filterConnections(schema, x, y, w, h), xs, ys);
+        paintPatches(g, filterPatches(schema, x, y, w, h), xs, ys);
     }
 
     public <T> T hitTest(Schema schema, int x, int y, HitTester<T> tester) {
-        for (Patch patch: schema.descending()) {
+        for (Patch patch: schema.patchesAt(x, y)) {
             if (x >= patch.getX() && y >= patch.getY()) {
                 PatchView pm = patchView(patch);
-                T result = pm.hitTest(x, y, tester);
+                T result = pm.hitTest(patch, x, y, tester);
                 if (result != null) {
                     return result;
                 }
@@ -159,15 +296,39 @@ public class RenderContext implements Closeable {
     }
 
     public Rectangle getBounds(Schema schema) {
+        for (Patch patch: schema.unsizedPatches()) {
+            patchView(patch);
+        }
         Rectangle rc = new Rectangle();
-        for (Patch patch: schema.patches()) {
-            PatchView pm = patchView(patch);
-            rc.add(new Rectangle(patch.getX(), patch.getY(),
-                    pm.getWidth(), pm.getHeight()));
+        if (schema.patches().iterator().hasNext()) {
+            rc.add(schema.getBounds());
         }
         return rc;
     }
 
+    // bounds of the patches, which are laid out as needed
+    public Rectangle getPatchBounds(SchemaGraph graph) {
+        if (graph instanceof Schema) {
+            Schema schema = (Schema)graph;
+            for (Patch patch: schema.patches()) {
+                patchView(patch);
+            }
+            return schema.getBounds();
+        }
+        Rectangle rc = null;
+        for (int p = 0; p < graph.getPatchCount(); ++p) {
+            Dimension dim = patchSize(graph, p);
+            Rectangle bounds = new Rectangle(graph.getX(p), graph.getY(p),
+                    dim.width, dim.height);
+            if (rc == null) {
+                rc = bounds;
+            } else {
+                rc.add(bounds);
+            }
+        }
+        return rc == null ? new Rectangle() : rc;
+    }
+
     public void paintConnection(Graphics2D g, int x1, int y1, int x2, int y2) {
         if (y1 == y2 || x1 == x2) {
             g.drawLine(x1, y1, x2, y2);
@@ -179,7 +340,12 @@ public class RenderContext implements Closeable {
     }
 
     public void paintPin(Graphics2D g, Pin pin, int x, int y, int w, int h) {
-        if (pin.isConnected()) {
+        paintPin(g, pin.isConnected(), x, y, w, h);
+    }
+
+    public void paintPin(Graphics2D g, boolean connected, int x, int y,
+            int w, int h) {
+        if (connected) {
             g.fillOval(x, y, w, h);
         } else {
             g.drawOval(x, y, w, h);
@@ -187,70 +353,212 @@ public class RenderContext implements Closeable {
     }
 
     public Dimension stringSize(String s, Font font) {
-        TextLayout layout = new TextLayout(s, font, frc);
+        TextLayout layout = texts.get(s, font, frc);
         return textSize(layout);
     }
 
     public void paintString(Graphics2D g, String s, Font font, int x, int y,
             int w, int h, HorizontalAlignment ha, VerticalAlignment va) {
         Rectangle bounds = new Rectangle(x, y, w, h);
-        TextLayout layout = new TextLayout(s, font, frc);
+        TextLayout layout = texts.get(s, font, frc);
         Dimension size = textSize(layout);
         ha.adjustWidth(bounds, size.width);
         va.adjustHeight(bounds, size.height);
         layout.draw(g, bounds.x, bounds.y+layout.getAscent());
     }
 
+    public void writeConnection(XMLWriter xml, int x1, int y1,
+            int x2, int y2) {
+        xml.start("path");
+        if (y1 == y2 || x1 == x2) {
+            xml.attribute("d", "M" + x1 + " " + y1 + "L" + x2 + " " + y2);
+        } else {
+            String xc = Util.dbl2str((x1+x2)/2.0);
+            xml.attribute("d", "M" + x1 + " " + y1 + "C" + xc + " " + y1
+                    + " " + xc + " " + y2 + " " + x2 + " " + y2);
+        }
+        xml.end("path");
+    }
+
+    public void writePin(XMLWriter xml, Pin pin, int x, int y, int w, int h) {
+        writePin(xml, pin.isConnected(), x, y, w, h);
+    }
+
+    public void writePin(XMLWriter xml, boolean connected, int x, int y,
+            int w, int h) {
+        xml.start("ellipse");
+        xml.attribute("cx", x + w/2.0);
+        xml.attribute("cy", y + h/2.0);
+        xml.attribute("rx", w/2.0);
+        xml.attribute("ry", h/2.0);
+        xml.attribute("fill", connected
+                ? svgColor(patchStyle.getForeground()) : "none");
+        xml.end("ellipse");
+    }
+
+    public void writeString(XMLWriter xml, String s, Font font, int x, int y,
+            int w, int h, HorizontalAlignment ha, VerticalAlignment va) {
+        Rectangle bounds = new Rectangle(x, y, w, h);
+        TextLayout layout = texts.get(s, font, frc);
+        Dimension size = textSize(layout);
+        ha.adjustWidth(bounds, size.width);
+        va.adjustHeight(bounds, size.height);
+        xml.start("text");
+        xml.attribute("x", bounds.x);
+        xml.attribute("y", bounds.y + layout.getAscent());
+        xml.attribute("font-family", font.getFamily());
+        xml.attribute("font-size", font.getSize2D());
+        if (font.isItalic()) {
+            xml.attribute("font-style", "italic");
+        }
+        if (font.isBold()) {
+            xml.attribute("font-weight", "bold");
+        }
+        xml.text(s);
+        xml.end("text");
+    }
+
+    public static String svgColor(Color color) {
+        return String.format("#%06x", color.getRGB() & 0xFFFFFF);
+    }
+
     private Dimension textSize(TextLayout layout) {
         return new Dimension((int)Math.ceil(layout.getAdvance()),
                 (int)Math.ceil(layout.getAscent() + layout.getDescent()));
     }
 
     private PatchView patchView(Patch patch) {
-        PatchView view = patchViews.get(patch);
+        PatchView view = layouts.get(patch);
         if (view == null) {
-            view = new DefaultPatchView(this, patch, patchStyle);
-            patchViews.put(patch, view);
+            Schema schema = patch.getSchema();
+            if (schema == null) {
+                throw new IllegalArgumentException(
+                        "Patch not in a schema: [" + patch.getTitle() + "]");
+            }
+            view = new DefaultPatchView(this, schema, schema.indexOf(patch),
+                    patchStyle);
+            layouts.put(patch, view);
+            // the model only changes when the layout does
+            if (!readOnly) {
+                patch.setSize(view.getWidth(), view.getHeight());
+            }
         }
         return view;
     }
 
-    public int columnSize(Iterable<? extends Pin> pins, int[] height) {
+    private PatchView patchView(SchemaGraph graph, int patch) {
+        if (graph instanceof Schema) {
+            return patchView(((Schema)graph).getPatch(patch));
+        }
+        PatchView view = layouts.get(graph, patch);
+        if (view == null) {
+            view = new DefaultPatchView(this, graph, patch, patchStyle);
+            layouts.put(graph, patch, view);
+        }
+        return view;
+    }
+
+    public int columnSize(String[] names, int[] height) {
         int pw = patchStyle.getPinWidth();
         int sw = patchStyle.getPadding();
         int width = 0;
-        int i = 0;
-        for (Pin pin: pins) {
-            Dimension size = stringSize(pin.getName(),
+        for (int i = 0; i < names.length; ++i) {
+            Dimension size = stringSize(names[i],
                     patchStyle.getPinNameFont());
             width = Math.max(width, size.width + sw + pw);
-            height[i++] = Math.max(pw, size.height);
+            height[i] = Math.max(pw, size.height);
         }
         return width;
     }
 
-    private void paintConnections(Graphics2D g, Iterable<Input> inputs,
+    public void paintConnections(Graphics2D g, Iterable<Input> inputs,
             int x, int y) {
         for (Input in: inputs) {
             paintConnection(g, in, x, y);
         }
     }
 
+    public void writeConnections(XMLWriter xml, Iterable<Input> inputs) {
+        for (Input in: inputs) {
+            Point ip = inputPosition(in);
+            Point op = outputPosition(in.getSource());
+            writeConnection(xml, ip.x, ip.y, op.x, op.y);
+        }
+    }
+
+    public void writePatches(XMLWriter xml, Iterable<Patch> patches) {
+        for (Patch patch: patches) {
+            PatchView pm = patchView(patch);
+            Schema schema = patch.getSchema();
+            pm.writeSvg(xml, schema, schema.indexOf(patch), patch.getX(),
+                    patch.getY());
+        }
+    }
+
+    // the links of the graph, output by output
+    public void writeConnections(XMLWriter xml, SchemaGraph graph) {
+        for (int p = 0; p < graph.getPatchCount(); ++p) {
+            for (int o = 0; o < graph.getOutputCount(p); ++o) {
+                int sinkCount = graph.getSinkCount(p, o);
+                if (sinkCount > 0) {
+                    Point op = outputPosition(graph, p, o);
+                    for (int k = 0; k < sinkCount; ++k) {
+                        int sink = graph.getSinkPatch(p, o, k);
+                        if (sink >= 0) {
+                            Point ip = inputPosition(graph, sink,
+                                    graph.getSinkInput(p, o, k));
+                            writeConnection(xml, ip.x, ip.y, op.x, op.y);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    public void writePatches(XMLWriter xml, SchemaGraph graph) {
+        for (int p = 0; p < graph.getPatchCount(); ++p) {
+            patchView(graph, p).writeSvg(xml, graph, p, graph.getX(p),
+                    graph.getY(p));
+        }
+    }
+
     private void paintConnection(Graphics2D g, Input in, int x, int y) {
         Point ip = inputPosition(in);
         Point op = outputPosition(in.getSource());
         paintConnection(g, x + ip.x, y + ip.y, x + op.x, y + op.y);
     }
 
-    private void paintPatches(Graphics2D g, Iterable<Patch> patches,
+    public void paintPatches(Graphics2D g, Iterable<Patch> patches,
             int x, int y) {
         for (Patch patch: patches) {
             paintPatch(g, patch, x + patch.getX(), y + patch.getY());
         }
     }
 
+    // links given as pairs of patch and input indices
+    public void paintConnections(Graphics2D g, SchemaGraph graph, int[] links,
+            int x, int y) {
+        for (int k = 0; k < links.length; k += 2) {
+            int p = links[k];
+            int i = links[k+1];
+            Point ip = inputPosition(graph, p, i);
+            Point op = outputPosition(graph, graph.getSourcePatch(p, i),
+                    graph.getSourceOutput(p, i));
+            paintConnection(g, x + ip.x, y + ip.y, x + op.x, y + op.y);
+        }
+    }
+
+    public void paintPatches(Graphics2D g, SchemaGraph graph, int[] patches,
+            int x, int y) {
+        for (int p: patches) {
+            patchView(graph, p).paint(g, graph, p, x + graph.getX(p),
+                    y + graph.getY(p));
+        }
+    }
+
     private void paintPatch(Graphics2D g, Patch patch, int x, int y) {
         PatchView pm = patchView(patch);
-        pm.paint(g, x, y);
+        Schema schema = patch.getSchema();
+        pm.paint(g, schema, schema.indexOf(patch), x, y);
     }
 }
@@ -0,0 +1,93 @@
+package org.tastefuljava.simuli.render;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import org.tastefuljava.simuli.model.SchemaGraph;
+import org.tastefuljava.simuli.util.XMLWriter;
+
+// writes a schema as SVG, one element at a time
+public class SvgRenderer {
+    private final LayoutCache layouts;
+    private int margin = 10;
+    private Color background = Color.WHITE;
+
+    public SvgRenderer(LayoutCache layouts) {
+        this.layouts = layouts;
+    }
+
+    public int getMargin() {
+        return margin;
+    }
+
+    public void setMargin(int margin) {
+        this.margin = margin;
+    }
+
+    // null for a transparent background
+    public Color getBackground() {
+        return background;
+    }
+
+    public void setBackground(Color background) {
+        this.background = background;
+    }
+
+    public void render(SchemaGraph graph, File file) throws IOException {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file), "UTF-8"))) {
+            render(graph, writer);
+        }
+    }
+
+    public void render(SchemaGraph graph, Writer writer) throws IOException {
+        PrintWriter out = new PrintWriter(writer);
+        XMLWriter xml = new XMLWriter(out);
+        try (RenderContext pc = RenderContext.open(layouts)) {
+            Rectangle area = pc.getPatchBounds(graph);
+            area.grow(margin, margin);
+            out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+            xml.start("svg");
+            xml.attribute("xmlns", "http://www.w3.org/2000/svg");
+            xml.attribute("width", area.width);
+            xml.attribute("height", area.height);
+            // the drawing stays in schema coordinates
+            xml.attribute("viewBox", area.x + " " + area.y + " "
+                    + area.width + " " + area.height);
+            String fg = RenderContext.svgColor(
+                    layouts.getPatchStyle().getForeground());
+            xml.start("style");
+            xml.text("path, rect, ellipse {stroke: " + fg + "}"
+                    + " path {fill: none} text {fill: " + fg + "}");
+            xml.end("style");
+            if (background != null) {
+                xml.start("rect");
+                xml.attribute("x", area.x);
+                xml.attribute("y", area.y);
+                xml.attribute("width", area.width);
+                xml.attribute("height", area.height);
+                xml.attribute("fill", RenderContext.svgColor(background));
+                xml.attribute("style", "stroke: none");
+                xml.end("rect");
+            }
+            xml.start("g");
+            pc.writeConnections(xml, graph);
+            xml.end("g");
+            xml.start("g");
+            pc.writePatches(xml, graph);
+            xml.end("g");
+            xml.end("svg");
+        }
+        out.println();
+        out.flush();
+        if (out.checkError()) {
+            throw new IOException("Error writing SVG");
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package org.tastefuljava.simuli.render;
+
+import java.awt.Font;
+import java.awt.font.FontRenderContext;
+import java.awt.font.TextLayout;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+// a bounded LRU cache of text layouts; pin names repeat a lot. The entries
+// are spread over independently locked segments, each one an LRU of its own,
+// so that threads rendering in parallel seldom wait for each other.
+public class TextCache {
+    private static final TextCache DEFAULT = new TextCache(4096);
+    private static final int MAX_SEGMENTS = 16;
+
+    private final int capacity;
+    private final Segment[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public static TextCache getDefault() {
+        return DEFAULT;
+    }
+
+    public TextCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException(
+                    "Invalid capacity: " + capacity);
+        }
+        this.capacity = capacity;
+        int count = Math.min(MAX_SEGMENTS, capacity);
+        segments = new Segment[count];
+        for (int i = 0; i < count; ++i) {
+            // the capacities of the segments add up to the whole
+            segments[i] = new Segment(capacity/count
+                    + (i < capacity%count ? 1 : 0));
+        }
+    }
+
+    public TextLayout get(String s, Font font, FontRenderContext frc) {
+        Key key = new Key(s, font, frc);
+        Segment segment = segmentFor(key);
+        TextLayout layout = segment.get(key);
+        if (layout != null) {
+            hits.increment();
+            return layout;
+        }
+        misses.increment();
+        // the layout is built without holding the lock; if another thread
+        // was faster, its layout wins
+        return segment.putIfAbsent(key, new TextLayout(s, font, frc));
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment: segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0 : (double)h/total;
+    }
+
+    public void clear() {
+        for (Segment segment: segments) {
+            segment.clear();
+        }
+        hits.reset();
+        misses.reset();
+    }
+
+    private Segment segmentFor(Key key) {
+        int h = key.hash;
+        return segments[Math.floorMod(h ^ (h >>> 16), segments.length)];
+    }
+
+    private static class Segment {
+        private final Map<Key,TextLayout> layouts;
+
+        private Segment(int capacity) {
+            layouts = new LinkedHashMap<Key,TextLayout>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<Key,TextLayout> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        private synchronized TextLayout get(Key key) {
+            return layouts.get(key);
+        }
+
+        private synchronized TextLayout putIfAbsent(Key key,
+                TextLayout layout) {
+            TextLayout old = layouts.get(key);
+            if (old != null) {
+                return old;
+            }
+            layouts.put(key, layout);
+            return layout;
+        }
+
+        private synchronized int size() {
+            return layouts.size();
+        }
+
+        private synchronized void clear() {
+            layouts.clear();
+        }
+    }
+
+    private static class Key {
+        private final String string;
+        private final Font font;
+        private final FontRenderContext frc;
+        private final int hash;
+
+        private Key(String string, Font font, FontRenderContext frc) {
+            this.string = string;
+            this.font = font;
+            this.frc = frc;
+            this.hash = Objects.hash(string, font, frc);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key)obj;
+            return hash == other.hash && string.equals(other.string)
+                    && font.equals(other.font) && frc.equals(other.frc);
+        }
+    }
+}
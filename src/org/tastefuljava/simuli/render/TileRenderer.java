@@ -0,0 +1,165 @@
+package org.tastefuljava.simuli.render;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.font.FontRenderContext;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.tastefuljava.simuli.model.SchemaGraph;
+
+// renders a whole schema, or any other graph, into an image, tile by tile on
+// a pool of threads; the schema must not change during the rendering
+public class TileRenderer {
+    // room for the strokes and antialiasing around the bounds
+    private static final int PAD = 2;
+
+    private final LayoutCache layouts;
+    private int tileSize = 512;
+    private int margin = 10;
+    private Color background = Color.WHITE;
+
+    public TileRenderer(LayoutCache layouts) {
+        this.layouts = layouts;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    public void setTileSize(int tileSize) {
+        if (tileSize <= 0) {
+            throw new IllegalArgumentException(
+                    "Invalid tile size: " + tileSize);
+        }
+        this.tileSize = tileSize;
+    }
+
+    public int getMargin() {
+        return margin;
+    }
+
+    public void setMargin(int margin) {
+        this.margin = margin;
+    }
+
+    // null for a transparent background
+    public Color getBackground() {
+        return background;
+    }
+
+    public void setBackground(Color background) {
+        this.background = background;
+    }
+
+    // the area of the schema covered by the image
+    public Rectangle getArea(SchemaGraph graph) {
+        Rectangle rc;
+        try (RenderContext pc = RenderContext.open(layouts)) {
+            // the layout must be done on this thread: it updates the schema
+            for (int p = 0; p < graph.getPatchCount(); ++p) {
+                pc.patchSize(graph, p);
+            }
+            rc = pc.getPatchBounds(graph);
+        }
+        rc.grow(margin, margin);
+        return rc;
+    }
+
+    public BufferedImage render(SchemaGraph graph)
+            throws InterruptedException, ExecutionException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            return render(graph, executor);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public BufferedImage render(SchemaGraph graph, ExecutorService executor)
+            throws InterruptedException, ExecutionException {
+        Rectangle area = getArea(graph);
+        BufferedImage image = new BufferedImage(area.width, area.height,
+                BufferedImage.TYPE_INT_ARGB);
+        CompletionService<Tile> tiles
+                = new ExecutorCompletionService<>(executor);
+        int count = 0;
+        for (int y = 0; y < area.height; y += tileSize) {
+            for (int x = 0; x < area.width; x += tileSize) {
+                Rectangle rc = new Rectangle(area.x + x, area.y + y,
+                        Math.min(tileSize, area.width - x),
+                        Math.min(tileSize, area.height - y));
+                tiles.submit(() -> new Tile(rc, renderTile(graph, rc)));
+                ++count;
+            }
+        }
+        Graphics2D g = image.createGraphics();
+        try {
+            // tiles are composed as they come, and then dropped
+            for (int i = 0; i < count; ++i) {
+                Future<Tile> future = tiles.take();
+                Tile tile = future.get();
+                g.drawImage(tile.image, tile.bounds.x - area.x,
+                        tile.bounds.y - area.y, null);
+            }
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+
+    // renders the given area of the schema, which must have been laid out
+    // by getArea; it only reads the schema, and can run on any thread
+    public BufferedImage renderTile(SchemaGraph graph, Rectangle rc) {
+        BufferedImage tile = new BufferedImage(rc.width, rc.height,
+                BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = tile.createGraphics();
+        try (RenderContext pc = RenderContext.openReadOnly(layouts)) {
+            setRenderingHints(g);
+            if (background != null) {
+                g.setColor(background);
+                g.fillRect(0, 0, rc.width, rc.height);
+            }
+            g.setColor(layouts.getPatchStyle().getForeground());
+            // things lying just outside of the tile may still bleed into it
+            int x = rc.x - PAD;
+            int y = rc.y - PAD;
+            int w = rc.width + 2*PAD;
+            int h = rc.height + 2*PAD;
+            int[] links = pc.linksIn(graph, x, y, w, h);
+            int[] patches = pc.patchesIn(graph, x, y, w, h);
+            pc.paintConnections(g, graph, links, -rc.x, -rc.y);
+            pc.paintPatches(g, graph, patches, -rc.x, -rc.y);
+        } finally {
+            g.dispose();
+        }
+        return tile;
+    }
+
+    private void setRenderingHints(Graphics2D g) {
+        FontRenderContext frc = layouts.getFontRenderContext();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                frc.getAntiAliasingHint());
+        g.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS,
+                frc.getFractionalMetricsHint());
+    }
+
+    private static class Tile {
+        private final Rectangle bounds;
+        private final BufferedImage image;
+
+        private Tile(Rectangle bounds, BufferedImage image) {
+            this.bounds = bounds;
+            this.image = image;
+        }
+    }
+}
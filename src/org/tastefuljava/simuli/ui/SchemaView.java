@@ -4,18 +4,26 @@ import org.tastefuljava.simuli.ui.dragger.PatchDragger;
 import org.tastefuljava.simuli.ui.dragger.InputDragger;
 import org.tastefuljava.simuli.ui.dragger.OutputDragger;
 import java.awt.AWTEvent;
+import java.awt.Color;
 import java.awt.Container;
 import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
 import java.awt.Insets;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
+import java.awt.Transparency;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
+import java.awt.image.BufferedImage;
 import static java.lang.Boolean.TRUE;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Properties;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -28,7 +36,10 @@ import org.tastefuljava.simuli.model.Output;
 import org.tastefuljava.simuli.model.Patch;
 import org.tastefuljava.simuli.render.RenderContext;
 import org.tastefuljava.simuli.model.Schema;
+import org.tastefuljava.simuli.model.SchemaChange;
+import org.tastefuljava.simuli.model.SchemaListener;
 import org.tastefuljava.simuli.render.HitTester;
+import org.tastefuljava.simuli.render.LayoutCache;
 import org.tastefuljava.simuli.util.ListenerList;
 
 public class SchemaView extends JComponent
@@ -41,14 +52,20 @@ public class SchemaView extends JComponent
             = RenderingHints.VALUE_FRACTIONALMETRICS_DEFAULT;
 
     private final Properties props = new Properties();
+    private LayoutCache layouts;
     private Schema schema;
     private Insets margin = new Insets(10, 10, 10, 10);
     private MouseDragger dragger;
     private Patch selection;
+    private final List<Patch> highlighted = new ArrayList<>();
+    private Color highlightColor = new Color(255, 128, 0);
 
     private final ListenerList listeners = new ListenerList();
     private final SelectionListener selectionNotifier
             = listeners.getNotifier(SelectionListener.class);
+    private final TileCache tiles = new TileCache(128);
+    private Rectangle schemaBounds;
+    private final SchemaListener schemaListener = this::schemaChanged;
 
     public SchemaView() {
         initialize();
@@ -70,7 +87,33 @@ public class SchemaView extends JComponent
     }
 
     public void setSchema(Schema schema) {
+        if (this.schema != null) {
+            this.schema.removeSchemaListener(schemaListener);
+        }
         this.schema = schema;
+        schemaBounds = null;
+        tiles.clear();
+        if (schema != null) {
+            schema.addSchemaListener(schemaListener);
+        }
+        repaint();
+    }
+
+    // typically the result of a GraphAnalysis query
+    public void setHighlighted(Collection<Patch> patches) {
+        highlighted.clear();
+        if (patches != null) {
+            highlighted.addAll(patches);
+        }
+        repaint();
+    }
+
+    public Color getHighlightColor() {
+        return highlightColor;
+    }
+
+    public void setHighlightColor(Color newValue) {
+        highlightColor = newValue;
         repaint();
     }
 
@@ -82,7 +125,9 @@ public class SchemaView extends JComponent
 
     public void setProps(Properties newProps) {
         props.putAll(newProps);
-        repaint();
+        layouts = null;
+        tiles.clear();
+        updateSize();
     }
 
     public <T> T hitTest(int x, int y, HitTester<T> tester) {
@@ -138,6 +183,19 @@ public class SchemaView extends JComponent
                 | AWTEvent.MOUSE_MOTION_EVENT_MASK);
     }
 
+    private void schemaChanged(SchemaChange change) {
+        tiles.changed(change);
+        // new or resized patches are only measured at the next layout
+        Rectangle bounds = schema.getBounds();
+        if (!bounds.equals(schemaBounds)
+                || !change.getAddedPatches().isEmpty()
+                || !change.getChangedPatches().isEmpty()) {
+            schemaBounds = bounds;
+            revalidate();
+        }
+        repaint();
+    }
+
     public void updateSize() {
         revalidate();
         repaint();
@@ -151,25 +209,104 @@ public class SchemaView extends JComponent
     }
 
     private void paintSchema(Graphics2D g) {
+        setRenderingHints(g);
+        try (RenderContext pc = openRenderContext()) {
+            tiles.validate(pc);
+            paintTiles(g, pc, g.getClipBounds());
+            paintHighlighted(g, pc);
+            if (dragger != null) {
+                dragger.feedback(g);
+            }
+        }
+    }
+
+    private static void setRenderingHints(Graphics2D g) {
         g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
                 RenderingHints.VALUE_ANTIALIAS_ON);
         g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
                 TEXT_ANTIALIAS);
         g.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS,
                 FRACTIONALMETRICS);
-        try (RenderContext pc = openRenderContext()) {
-            Rectangle rc = g.getClipBounds();
-            pc.paint(g, schema, rc.x, rc.y, rc.width, rc.height,
-                    margin.left, margin.top);
-            if (dragger != null) {
-                dragger.feedback(g);
+    }
+
+    private void paintTiles(Graphics2D g, RenderContext pc, Rectangle clip) {
+        if (clip == null) {
+            clip = new Rectangle(getSize());
+        }
+        Point pt = component2schema(clip.x, clip.y);
+        int tx0 = pt.x >> TileCache.TILE_SHIFT;
+        int ty0 = pt.y >> TileCache.TILE_SHIFT;
+        int tx1 = (pt.x + clip.width - 1) >> TileCache.TILE_SHIFT;
+        int ty1 = (pt.y + clip.height - 1) >> TileCache.TILE_SHIFT;
+        for (int ty = ty0; ty <= ty1; ++ty) {
+            for (int tx = tx0; tx <= tx1; ++tx) {
+                Image tile = tiles.get(tx, ty);
+                if (tile == null) {
+                    tile = renderTile(pc, tx, ty);
+                    tiles.put(tx, ty, tile);
+                }
+                Point pos = schema2component(tx << TileCache.TILE_SHIFT,
+                        ty << TileCache.TILE_SHIFT);
+                g.drawImage(tile, pos.x, pos.y, null);
             }
         }
     }
 
+    private Image renderTile(RenderContext pc, int tx, int ty) {
+        int size = TileCache.TILE_SIZE;
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        BufferedImage tile = gc == null
+                ? new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB)
+                : gc.createCompatibleImage(size, size,
+                        Transparency.TRANSLUCENT);
+        Graphics2D g = tile.createGraphics();
+        try {
+            setRenderingHints(g);
+            g.setColor(getForeground());
+            g.setFont(getFont());
+            int x = tx << TileCache.TILE_SHIFT;
+            int y = ty << TileCache.TILE_SHIFT;
+            // things lying just outside of the tile may still bleed into it
+            List<Input> links = new ArrayList<>();
+            int pad = TileCache.PAD;
+            for (Input in: pc.filterConnections(schema, x - pad, y - pad,
+                    size + 2*pad, size + 2*pad)) {
+                links.add(in);
+                tiles.painted(in, TileCache.bounds(pc, in));
+            }
+            List<Patch> patches = new ArrayList<>();
+            for (Patch patch: pc.filterPatches(schema, x - pad, y - pad,
+                    size + 2*pad, size + 2*pad)) {
+                patches.add(patch);
+                tiles.painted(patch, TileCache.bounds(pc, patch));
+            }
+            pc.paintConnections(g, links, -x, -y);
+            pc.paintPatches(g, patches, -x, -y);
+        } finally {
+            g.dispose();
+        }
+        return tile;
+    }
+
+    private void paintHighlighted(Graphics2D g, RenderContext pc) {
+        if (highlighted.isEmpty()) {
+            return;
+        }
+        Color color = g.getColor();
+        g.setColor(highlightColor);
+        for (Patch patch: highlighted) {
+            Dimension size = pc.patchSize(patch);
+            Point pt = schema2component(patch.getX(), patch.getY());
+            g.drawRect(pt.x - 2, pt.y - 2, size.width + 4, size.height + 4);
+        }
+        g.setColor(color);
+    }
+
     private RenderContext openRenderContext() {
-        return RenderContext.open(getProps(),
-                TEXT_ANTIALIAS, FRACTIONALMETRICS);
+        if (layouts == null) {
+            layouts = new LayoutCache(props, TEXT_ANTIALIAS, FRACTIONALMETRICS);
+        }
+        return RenderContext.open(layouts);
     }
 
     @Override
@@ -0,0 +1,170 @@
+package org.tastefuljava.simuli.ui;
+
+import java.awt.Dimension;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.tastefuljava.simuli.model.Input;
+import org.tastefuljava.simuli.model.Output;
+import org.tastefuljava.simuli.model.Patch;
+import org.tastefuljava.simuli.model.Pin;
+import org.tastefuljava.simuli.model.SchemaChange;
+import org.tastefuljava.simuli.render.RenderContext;
+
+// offscreen tiles of a schema, in schema coordinates
+class TileCache {
+    static final int TILE_SHIFT = 8;
+    static final int TILE_SIZE = 1 << TILE_SHIFT;
+    // beyond that, it's cheaper to start over
+    private static final int MAX_PENDING = 1000;
+    // room for the strokes and antialiasing around the bounds
+    static final int PAD = 2;
+
+    private final int capacity;
+    private final Map<Long,Image> tiles;
+    // where things were last painted
+    private final Map<Patch,Rectangle> patchBounds = new IdentityHashMap<>();
+    private final Map<Input,Rectangle> linkBounds = new IdentityHashMap<>();
+    private final List<Patch> pendingPatches = new ArrayList<>();
+    private final List<Input> pendingLinks = new ArrayList<>();
+    private boolean pendingClear;
+
+    TileCache(int capacity) {
+        this.capacity = capacity;
+        this.tiles = new LinkedHashMap<Long,Image>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long,Image> eldest) {
+                if (size() > TileCache.this.capacity) {
+                    eldest.getValue().flush();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    Image get(int tx, int ty) {
+        return tiles.get(key(tx, ty));
+    }
+
+    void put(int tx, int ty, Image tile) {
+        tiles.put(key(tx, ty), tile);
+    }
+
+    void painted(Patch patch, Rectangle bounds) {
+        patchBounds.put(patch, bounds);
+    }
+
+    void painted(Input in, Rectangle bounds) {
+        linkBounds.put(in, bounds);
+    }
+
+    void clear() {
+        for (Image tile: tiles.values()) {
+            tile.flush();
+        }
+        tiles.clear();
+        patchBounds.clear();
+        linkBounds.clear();
+        pendingPatches.clear();
+        pendingLinks.clear();
+        pendingClear = false;
+    }
+
+    // the change is only recorded: the new bounds can only be computed in a
+    // render context
+    void changed(SchemaChange change) {
+        if (pendingClear) {
+            return;
+        }
+        pendingPatches.addAll(change.getAddedPatches());
+        pendingPatches.addAll(change.getMovedPatches());
+        pendingPatches.addAll(change.getChangedPatches());
+        pendingLinks.addAll(change.getChangedLinks());
+        for (Pin pin: change.getRemovedPins()) {
+            if (pin instanceof Input) {
+                pendingLinks.add((Input)pin);
+            }
+        }
+        if (pendingPatches.size() + pendingLinks.size() > MAX_PENDING) {
+            pendingClear = true;
+        }
+    }
+
+    void validate(RenderContext pc) {
+        if (pendingClear) {
+            clear();
+            return;
+        }
+        for (Patch patch: pendingPatches) {
+            invalidate(patchBounds.remove(patch));
+            invalidate(bounds(pc, patch));
+            for (Input in: patch.getInputs()) {
+                invalidateLink(pc, in);
+            }
+            for (Output out: patch.getOutputs()) {
+                for (Input in: out.getSinks()) {
+                    invalidateLink(pc, in);
+                }
+            }
+        }
+        for (Input in: pendingLinks) {
+            invalidateLink(pc, in);
+        }
+        pendingPatches.clear();
+        pendingLinks.clear();
+    }
+
+    static Rectangle bounds(RenderContext pc, Patch patch) {
+        Dimension size = pc.patchSize(patch);
+        return new Rectangle(patch.getX() - PAD, patch.getY() - PAD,
+                size.width + 2*PAD, size.height + 2*PAD);
+    }
+
+    static Rectangle bounds(RenderContext pc, Input in) {
+        Rectangle rc = pc.connectionBounds(in);
+        rc.grow(PAD, PAD);
+        return rc;
+    }
+
+    private void invalidateLink(RenderContext pc, Input in) {
+        invalidate(linkBounds.remove(in));
+        if (in.isConnected()) {
+            invalidate(bounds(pc, in));
+        }
+    }
+
+    private void invalidate(Rectangle rc) {
+        if (rc == null || rc.isEmpty()) {
+            return;
+        }
+        int tx0 = rc.x >> TILE_SHIFT;
+        int ty0 = rc.y >> TILE_SHIFT;
+        int tx1 = (rc.x + rc.width - 1) >> TILE_SHIFT;
+        int ty1 = (rc.y + rc.height - 1) >> TILE_SHIFT;
+        if ((long)(tx1 - tx0 + 1)*(ty1 - ty0 + 1) > tiles.size()) {
+            tiles.keySet().removeIf((key) -> {
+                int tx = (int)(key >> 32);
+                int ty = (int)(long)key;
+                return tx >= tx0 && tx <= tx1 && ty >= ty0 && ty <= ty1;
+            });
+        } else {
+            for (int ty = ty0; ty <= ty1; ++ty) {
+                for (int tx = tx0; tx <= tx1; ++tx) {
+                    Image tile = tiles.remove(key(tx, ty));
+                    if (tile != null) {
+                        tile.flush();
+                    }
+                }
+            }
+        }
+    }
+
+    private static Long key(int tx, int ty) {
+        return ((long)tx << 32) | (ty & 0xFFFFFFFFL);
+    }
+}
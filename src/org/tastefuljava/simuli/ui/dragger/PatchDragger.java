@@ -28,21 +28,22 @@ public class PatchDragger implements MouseDragger {
     public void start(int x, int y) {
         dx = pos.x - x;
         dy = pos.y - y;
-        view.updateSize();
+        repaintFeedback();
     }
 
     @Override
     public void stop(int x, int y) {
+        repaintFeedback();
         moveTo(x, y);
         Point pt = view.component2schema(pos.x, pos.y);
         patch.setPosition(pt.x, pt.y);
-        view.updateSize();
     }
 
     @Override
     public void drag(int x, int y) {
+        repaintFeedback();
         moveTo(x, y);
-        view.updateSize();
+        repaintFeedback();
     }
 
     @Override
@@ -50,6 +51,11 @@ public class PatchDragger implements MouseDragger {
         g.drawRect(pos.x, pos.y, size.width, size.height);
     }
 
+    // the schema itself doesn't change until the drag stops
+    private void repaintFeedback() {
+        view.repaint(pos.x - 1, pos.y - 1, size.width + 3, size.height + 3);
+    }
+
     private void moveTo(int x, int y) {
         pos.x = x + dx;
         pos.y = y + dy;